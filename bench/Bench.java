@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small benchmark harness. Each benchmark runs a fixed number of
+ * operations per iteration; untimed setup runs before every iteration so
+ * operations that use up their state (queued events, say) start fresh. The
+ * first iterations warm the JIT up and are discarded.
+ */
+public final class Bench {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 8;
+
+    /*
+       Results are folded into this field so the JIT cannot discard work
+       whose result is otherwise unused.
+    */
+    private static volatile long sink;
+
+    public interface Setup {
+        Operation prepare();
+    }
+
+    public interface Operation {
+        long run(int index);
+    }
+
+    public static final class Result {
+        private final String name;
+        private final String params;
+        private final double nanosPerOp;
+        private final double errorNanos;
+
+        private Result(String name, String params, double nanosPerOp, double errorNanos) {
+            this.name = name;
+            this.params = params;
+            this.nanosPerOp = nanosPerOp;
+            this.errorNanos = errorNanos;
+        }
+
+        public String toCsv() {
+            return String.format("%s,%s,%.1f,%.1f", name, params, nanosPerOp, errorNanos);
+        }
+    }
+
+    private Bench() {
+    }
+
+    /**
+     * Measures the average time of one operation. The error is the
+     * standard deviation across measured iterations.
+     */
+    public static Result measure(String name, String params, int opsPerIteration, Setup setup) {
+        List<Double> samples = new ArrayList<>();
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++) {
+            Operation op = setup.prepare();
+            long acc = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerIteration; i++) {
+                acc += op.run(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += acc;
+            if (iteration >= WARMUP_ITERATIONS) {
+                samples.add((double) elapsed / opsPerIteration);
+            }
+        }
+        double mean = samples.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        double variance = samples.stream().mapToDouble(s -> (s - mean) * (s - mean)).sum() / Math.max(1, samples.size() - 1);
+        return new Result(name, params, mean, Math.sqrt(variance));
+    }
+}
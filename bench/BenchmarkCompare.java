@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two benchmark result files and exits with status 1 if any
+ * benchmark got slower by more than the threshold (10% unless given) and
+ * by more than the combined error of the two measurements.
+ *
+ * Usage: BenchmarkCompare baseline.csv current.csv [threshold-percent]
+ */
+public final class BenchmarkCompare {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BenchmarkCompare <baseline.csv> <current.csv> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, double[]> baseline = read(Path.of(args[0]));
+        Map<String, double[]> current = read(Path.of(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-52s %12s %12s %8s%n", "benchmark", "baseline ns", "current ns", "change");
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            double[] after = entry.getValue();
+            if (before == null) {
+                System.out.printf("%-52s %12s %12.1f %8s%n", entry.getKey(), "-", after[0], "new");
+                continue;
+            }
+            double change = (after[0] - before[0]) / before[0] * 100;
+            boolean regressed = change > threshold && after[0] - before[0] > before[1] + after[1];
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-52s %12.1f %12.1f %+7.1f%%%s%n", entry.getKey(), before[0], after[0], change, regressed ? "  REGRESSION" : "");
+        }
+        System.out.printf("%d regression(s) over %.0f%%%n", regressions, threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /*
+       Maps "benchmark rows cols density" to {ns_per_op, error_ns}.
+    */
+    private static Map<String, double[]> read(Path file) throws IOException {
+        Map<String, double[]> results = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(file);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",", -1);
+            if (fields.length == 6) {
+                String key = String.join(" ", fields[0], fields[1], fields[2], fields[3]).strip();
+                results.put(key, new double[]{Double.parseDouble(fields[4]), Double.parseDouble(fields[5])});
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import processing.awt.PGraphicsJava2D;
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * Benchmarks for the simulation's hot paths over generated worlds of
+ * several sizes and densities. Writes one CSV line per benchmark and
+ * parameter set, to standard output and to the file named by the first
+ * argument if there is one.
+ *
+ * Run with bench/run.sh, which also compares against bench/baseline.csv.
+ */
+public final class Benchmarks {
+    private static final int[][] SIZES = {{30, 40}, {120, 160}};
+    private static final double[] DENSITIES = {0.05, 0.20};
+    private static final long SEED = 203;
+    private static final int VIEW_ROWS = 15;
+    private static final int VIEW_COLS = 20;
+    private static final int TILE_SIZE = 32;
+    private static final String HEADER = "benchmark,rows,cols,density,ns_per_op,error_ns";
+
+    private static final Action NO_ACTION = scheduler -> {
+    };
+
+    public static void main(String[] args) throws IOException {
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        List<Bench.Result> results = new ArrayList<>();
+        results.add(benchSetAlpha());
+        for (int[] size : SIZES) {
+            for (double density : DENSITIES) {
+                String save = generateSave(size[0], size[1], density, SEED);
+                String params = String.format("%d,%d,%.2f", size[0], size[1], density);
+                results.add(benchScheduleEvent(imageStore, save, params));
+                results.add(benchUnscheduleAllEvents(imageStore, save, params));
+                results.add(benchUpdateOnTime(imageStore, save, params));
+                results.add(benchFindNearest(imageStore, save, params));
+                results.add(benchMoveEntity(imageStore, save, params));
+                results.add(benchParseSaveFile(imageStore, save, params));
+                results.add(benchDrawViewport(imageStore, save, params, false));
+                results.add(benchDrawViewport(imageStore, save, params, true));
+            }
+        }
+
+        System.out.println(HEADER);
+        for (Bench.Result result : results) {
+            System.out.println(result.toCsv());
+        }
+        if (args.length > 0) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(args[0])))) {
+                out.println(HEADER);
+                for (Bench.Result result : results) {
+                    out.println(result.toCsv());
+                }
+            }
+        }
+    }
+
+    /*
+       A world of grass with roughly the given fraction of cells occupied by
+       a mix of every kind of entity.
+    */
+    static String generateSave(int rows, int cols, double density, long seed) {
+        WorldRandom random = new WorldRandom(seed);
+        StringBuilder sb = new StringBuilder(String.format("Rows:\n%d\nCols:\n%d\nBackgrounds:\n", rows, cols));
+        String grassRow = String.join(" ", Collections.nCopies(cols, "grass"));
+        for (int row = 0; row < rows; row++) {
+            sb.append(grassRow).append('\n');
+        }
+        sb.append("Entities:\n");
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                if (random.nextDouble() >= density) {
+                    continue;
+                }
+                int kind = random.nextInt(20);
+                String position = " e" + row + "_" + col + " " + col + " " + row;
+                if (kind < 4) {
+                    sb.append("obstacle").append(position).append(" 0.900");
+                } else if (kind < 10) {
+                    sb.append("tree").append(position).append(" 0.400 1.200 3");
+                } else if (kind < 14) {
+                    sb.append("sapling").append(position).append(" 0");
+                } else if (kind < 15) {
+                    sb.append("house").append(position);
+                } else if (kind < 18) {
+                    sb.append("dude").append(position).append(" 0.800 0.180 4");
+                } else {
+                    sb.append("fairy").append(position).append(" 0.150 0.900");
+                }
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Bench.Result benchSetAlpha() {
+        PImage image = VirtualWorld.createImageColored(TILE_SIZE, TILE_SIZE, 0xffffff);
+        return Bench.measure("setAlpha", TILE_SIZE + "," + TILE_SIZE + ",", 20_000, () -> i -> {
+            SpriteCache.setAlpha(image, 0xffffff, 0);
+            return image.pixels[i % image.pixels.length];
+        });
+    }
+
+    private static Bench.Result benchScheduleEvent(ImageStore imageStore, String save, String params) {
+        List<Entity> targets = createTargets(imageStore, 10_000);
+        return Bench.measure("scheduleEvent", params, 10_000, () -> {
+            EventScheduler scheduler = new Simulation(imageStore, save, SEED).getScheduler();
+            WorldRandom random = new WorldRandom(SEED);
+            return i -> {
+                scheduler.scheduleEvent(targets.get(i), NO_ACTION, random.nextDouble());
+                return scheduler.getQueueSize();
+            };
+        });
+    }
+
+    private static Bench.Result benchUnscheduleAllEvents(ImageStore imageStore, String save, String params) {
+        List<Entity> targets = createTargets(imageStore, 2_000);
+        return Bench.measure("unscheduleAllEvents", params, 2_000, () -> {
+            EventScheduler scheduler = new Simulation(imageStore, save, SEED).getScheduler();
+            WorldRandom random = new WorldRandom(SEED);
+            for (Entity target : targets) {
+                scheduler.scheduleEvent(target, NO_ACTION, random.nextDouble());
+                scheduler.scheduleEvent(target, NO_ACTION, random.nextDouble());
+            }
+            return i -> {
+                scheduler.unscheduleAllEvents(targets.get(i));
+                return scheduler.getQueueSize();
+            };
+        });
+    }
+
+    private static Bench.Result benchUpdateOnTime(ImageStore imageStore, String save, String params) {
+        return Bench.measure("updateOnTime", params, 200, () -> {
+            EventScheduler scheduler = new Simulation(imageStore, save, SEED).getScheduler();
+            return i -> {
+                scheduler.updateOnTime(0.05);
+                return scheduler.getQueueSize();
+            };
+        });
+    }
+
+    private static Bench.Result benchFindNearest(ImageStore imageStore, String save, String params) {
+        WorldModel world = new Simulation(imageStore, save, SEED).getWorld();
+        List<EntityKind> kinds = List.of(EntityKind.TREE, EntityKind.SAPLING);
+        return Bench.measure("findNearest", params, 2_000, () -> {
+            WorldRandom random = new WorldRandom(SEED);
+            return i -> {
+                Point pos = new Point(random.nextInt(world.getNumCols()), random.nextInt(world.getNumRows()));
+                return world.findNearest(pos, kinds).map(e -> e.getPosition().x).orElse(-1);
+            };
+        });
+    }
+
+    private static Bench.Result benchMoveEntity(ImageStore imageStore, String save, String params) {
+        Simulation simulation = new Simulation(imageStore, save, SEED);
+        WorldModel world = simulation.getWorld();
+        List<EntityAb> movers = new ArrayList<>();
+        for (EntityAb entity : world.getEntities()) {
+            if (entity.getKind() == EntityKind.DUDE_NOT_FULL || entity.getKind() == EntityKind.FAIRY) {
+                movers.add(entity);
+            }
+        }
+        return Bench.measure("moveEntity", params, 20_000, () -> {
+            WorldRandom random = new WorldRandom(SEED);
+            return i -> {
+                EntityAb mover = movers.get(i % movers.size());
+                Point pos = mover.getPosition();
+                Point next = random.nextInt(2) == 0
+                        ? new Point(pos.x + random.nextInt(3) - 1, pos.y)
+                        : new Point(pos.x, pos.y + random.nextInt(3) - 1);
+                if (world.withinBounds(next) && !world.isOccupied(next)) {
+                    world.moveEntity(simulation.getScheduler(), mover, next);
+                }
+                return mover.getPosition().x;
+            };
+        });
+    }
+
+    private static Bench.Result benchParseSaveFile(ImageStore imageStore, String save, String params) {
+        Background defaultBackground = Simulation.createDefaultBackground(imageStore);
+        return Bench.measure("parseSaveFile", params, 20, () -> i -> {
+            WorldModel world = new WorldModel(SEED);
+            world.parseSaveFile(new Scanner(save), imageStore, defaultBackground);
+            return world.getEntities().size();
+        });
+    }
+
+    /*
+       With fullRedraw the view is shifted back and forth so every tile is
+       redrawn; otherwise the world advances a little between frames and
+       only the tiles that changed are redrawn.
+    */
+    private static Bench.Result benchDrawViewport(ImageStore imageStore, String save, String params, boolean fullRedraw) {
+        PApplet screen = createOffscreenApplet();
+        Simulation simulation = new Simulation(imageStore, save, SEED);
+        SpriteImages sprites = VirtualWorld.loadSprites(imageStore, screen, 0);
+        WorldView view = new WorldView(VIEW_ROWS, VIEW_COLS, screen, simulation.getWorld(), sprites, TILE_SIZE, TILE_SIZE);
+        String name = fullRedraw ? "drawViewportFull" : "drawViewportIncremental";
+        return Bench.measure(name, params, 100, () -> i -> {
+            if (fullRedraw) {
+                view.shiftView(i % 2 == 0 ? 1 : -1, 0);
+            } else {
+                simulation.advance(0.05);
+            }
+            view.drawViewport();
+            return view.getTilesDrawn();
+        });
+    }
+
+    private static PApplet createOffscreenApplet() {
+        PApplet screen = new PApplet();
+        PGraphics graphics = new PGraphicsJava2D();
+        graphics.setParent(screen);
+        graphics.setPrimary(false);
+        graphics.setSize(VIEW_COLS * TILE_SIZE, VIEW_ROWS * TILE_SIZE);
+        screen.g = graphics;
+        graphics.beginDraw();
+        return screen;
+    }
+
+    private static List<Entity> createTargets(ImageStore imageStore, int count) {
+        List<Entity> targets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            targets.add(Functions.createHouse("bench_" + i, new Point(-1, -1), imageStore.getImageList(Functions.HOUSE_KEY)));
+        }
+        return targets;
+    }
+}
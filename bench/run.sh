@@ -0,0 +1,22 @@
+#!/bin/sh
+# Builds the project and the benchmarks, runs them, and compares the results
+# against bench/baseline.csv. Run from the project root:
+#
+#   bench/run.sh                 run and compare, failing on regressions
+#   bench/run.sh --baseline      run and overwrite the baseline
+#
+# A regression threshold in percent may be given in BENCH_THRESHOLD.
+set -e
+cd "$(dirname "$0")/.."
+BUILD="${TMPDIR:-/tmp}/forestproject-bench"
+CP="$(ls lib/*.jar | tr '\n' ':')"
+rm -rf "$BUILD"
+mkdir -p "$BUILD"
+javac -nowarn -d "$BUILD" -cp "$CP" core/src/*.java src/*.java bench/*.java
+RESULTS="$BUILD/results.csv"
+java -Djava.awt.headless=true -cp "$BUILD:$CP" Benchmarks "$RESULTS"
+if [ "$1" = "--baseline" ]; then
+    cp "$RESULTS" bench/baseline.csv
+else
+    java -cp "$BUILD" BenchmarkCompare bench/baseline.csv "$RESULTS" ${BENCH_THRESHOLD:-10}
+fi
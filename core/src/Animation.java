@@ -9,7 +9,13 @@ public final class Animation implements Action{
         this.entity = entity;
         this.repeatCount = repeatCount;
     }
+    public int getRepeatCount() {
+        return repeatCount;
+    }
     public void executeAction(EventScheduler scheduler) {
+        if (!entity.isAnimating()) {
+            return;
+        }
         entity.nextImage();
 
         if (repeatCount != 1) {
@@ -0,0 +1,22 @@
+
+import java.util.List;
+
+public interface AnimationEntity {
+    double getAnimationPeriod();
+    int getImageIndex();
+    void setImageIndex(int currentIndex);
+
+    default void nextImage(){
+        setImageIndex(getImageIndex() + 1);
+    }
+
+    /**
+     * Whether the entity still animates. When it has stopped, a pending
+     * animation event lapses instead of advancing the frame.
+     */
+    default boolean isAnimating() {
+        return true;
+    }
+    List<Sprite> getImages();
+
+}
@@ -1,21 +1,23 @@
 import java.util.Collection;
 import java.util.List;
 
-import processing.core.PImage;
 
 /**
  * Represents a background for the 2D world.
  */
 public final class Background {
     private String id;
-    private final List<PImage> images;
+    private final List<Sprite> images;
     private int imageIndex;
 
-    public Background(String id, List<PImage> images) {
+    public Background(String id, List<Sprite> images) {
         this.id = id;
         this.images = images;
     }
-    public PImage getCurrentImage() {
+    public String getId() {
+        return this.id;
+    }
+    public Sprite getCurrentImage() {
         return this.images.get(imageIndex);
     }
 }
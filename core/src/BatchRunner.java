@@ -0,0 +1,125 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent simulations concurrently on a fixed thread pool,
+ * all sharing one image store, and reports how much simulated time was
+ * covered per second of wall time.
+ */
+public final class BatchRunner {
+    /**
+     * The outcome of one simulation in a batch.
+     */
+    public static final class Result {
+        private final Path world;
+        private final double simulatedSeconds;
+        private final long events;
+        private final List<String> log;
+
+        Result(Path world, double simulatedSeconds, long events, List<String> log) {
+            this.world = world;
+            this.simulatedSeconds = simulatedSeconds;
+            this.events = events;
+            this.log = log;
+        }
+
+        public Path getWorld() {
+            return world;
+        }
+
+        public double getSimulatedSeconds() {
+            return simulatedSeconds;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public List<String> getLog() {
+            return log;
+        }
+    }
+
+    private final ImageStore imageStore;
+    private final int threads;
+    private final long seed;
+    private double wallSeconds;
+
+    /**
+     * Every world in a batch gets its own stream split from the batch seed,
+     * so a whole batch can be repeated from that one number.
+     */
+    public BatchRunner(ImageStore imageStore, int threads, long seed) {
+        this.imageStore = imageStore;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    public double getWallSeconds() {
+        return wallSeconds;
+    }
+
+    /**
+     * Simulates every world for the given number of seconds and returns the
+     * results in the same order as the worlds.
+     */
+    public List<Result> run(List<Path> worlds, double lifetime) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        WorldRandom seeds = new WorldRandom(this.seed);
+        long start = System.nanoTime();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Path world : worlds) {
+                long worldSeed = seeds.nextLong();
+                futures.add(pool.submit(() -> {
+                    Simulation simulation = new Simulation(this.imageStore, world, worldSeed);
+                    simulation.advance(lifetime);
+                    return new Result(world, simulation.getCurrentTime(), simulation.getScheduler().getEventsProcessed(), simulation.log());
+                }));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            this.wallSeconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+        }
+    }
+
+    /*
+       Usage: BatchRunner <lifetime> <threads> <seed> <world files...>
+    */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if (args.length < 4) {
+            System.err.println("usage: BatchRunner <lifetime> <threads> <seed> <world files...>");
+            return;
+        }
+        double lifetime = Double.parseDouble(args[0]);
+        int threads = Integer.parseInt(args[1]);
+        long seed = Long.parseLong(args[2]);
+        List<Path> worlds = new ArrayList<>();
+        for (String world : Arrays.asList(args).subList(3, args.length)) {
+            worlds.add(Path.of(world));
+        }
+
+        BatchRunner runner = new BatchRunner(Headless.loadImageStore(), threads, seed);
+        List<Result> results = runner.run(worlds, lifetime);
+
+        double simulated = 0;
+        long events = 0;
+        for (Result result : results) {
+            simulated += result.getSimulatedSeconds();
+            events += result.getEvents();
+        }
+        System.out.printf("%d worlds, %d events, %.1f simulated s in %.3f wall s: %.1f simulated s per wall s%n",
+                results.size(), events, simulated, runner.getWallSeconds(), simulated / runner.getWallSeconds());
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes everything a running world depends on: the clock, the
+ * backgrounds, each entity with the events it has pending, and the agents
+ * parked until something they look for appears. The seed is not written:
+ * it is fixed when a world is made, and a checkpoint is restored into a
+ * world made with the same one.
+ * Restoring a checkpoint and running forward gives the same results as the
+ * original run did from that point. Dormant plants are written with the
+ * events they hold off the scheduler, and come back awake.
+ */
+public final class Checkpoint {
+    private static final int HOUSE = 0;
+    private static final int OBSTACLE = 1;
+    private static final int TREE = 2;
+    private static final int SAPLING = 3;
+    private static final int STUMP = 4;
+    private static final int FAIRY = 5;
+    private static final int DUDE_NOT_FULL = 6;
+    private static final int DUDE_FULL = 7;
+
+    private static final int ACTIVITY = 0;
+    private static final int ANIMATION = 1;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * A state cut into the part before the entities, each entity with its
+     * events, by serial and in the order the world holds them, and the
+     * part after. CheckpointRing compares states an entity at a time.
+     */
+    static final class Parts {
+        private final byte[] head;
+        private final LinkedHashMap<Long, byte[]> entities;
+        private final byte[] tail;
+
+        Parts(byte[] head, LinkedHashMap<Long, byte[]> entities, byte[] tail) {
+            this.head = head;
+            this.entities = entities;
+            this.tail = tail;
+        }
+
+        byte[] getHead() {
+            return head;
+        }
+
+        LinkedHashMap<Long, byte[]> getEntities() {
+            return entities;
+        }
+
+        byte[] getTail() {
+            return tail;
+        }
+    }
+
+    public static byte[] encode(WorldModel world, EventScheduler scheduler) {
+        return join(split(world, scheduler));
+    }
+
+    static Parts split(WorldModel world, EventScheduler scheduler) {
+        try {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(head)) {
+                out.writeDouble(scheduler.getCurrentTime());
+                out.writeLong(scheduler.getNextSequence());
+                writeBackgrounds(out, world);
+            }
+            LinkedHashMap<Long, byte[]> entities = new LinkedHashMap<>();
+            Map<EntityAb, Integer> indices = new IdentityHashMap<>();
+            for (EntityAb entity : world.getEntities()) {
+                indices.put(entity, indices.size());
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(record)) {
+                    writeEntityWithEvents(out, entity, scheduler);
+                }
+                if (entities.put(entity.getSerial(), record.toByteArray()) != null) {
+                    throw new IllegalArgumentException("two entities with serial " + entity.getSerial());
+                }
+            }
+            ByteArrayOutputStream tail = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(tail)) {
+                out.writeInt(world.getWaitingAgents().size());
+                for (WaitingAgent waiting : world.getWaitingAgents()) {
+                    writeWaiting(out, waiting, indices);
+                }
+            }
+            return new Parts(head.toByteArray(), entities, tail.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Puts the parts back together into the state encode would give.
+     */
+    static byte[] join(Parts parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(parts.head);
+            out.writeInt(parts.entities.size());
+            for (byte[] record : parts.entities.values()) {
+                out.write(record);
+            }
+            out.write(parts.tail);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The simulated time at which the state was captured.
+     */
+    public static double timeOf(byte[] state) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(state)).readDouble();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the contents of the world and scheduler with the given state.
+     * Only backgrounds that differ are replaced, so listeners hear about
+     * just those cells.
+     */
+    public static void restore(byte[] state, WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            double time = in.readDouble();
+            long nextSequence = in.readLong();
+            scheduler.restore(time, nextSequence);
+            world.removeAllEntities();
+            readBackgrounds(in, world, imageStore);
+            int count = in.readInt();
+            List<EntityAb> entities = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                EntityAb entity = readEntityWithEvents(in, world, scheduler, imageStore, false);
+                world.addEntity(entity);
+                entities.add(entity);
+            }
+            int waiting = in.readInt();
+            for (int i = 0; i < waiting; i++) {
+                readWaiting(in, entities, world, imageStore);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeBackgrounds(DataOutputStream out, WorldModel world) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] cells = new int[world.getNumRows() * world.getNumCols()];
+        for (int row = 0; row < world.getNumRows(); row++) {
+            for (int col = 0; col < world.getNumCols(); col++) {
+                Background background = world.getBackgroundCell(new Point(col, row));
+                int index = -1;
+                if (background != null) {
+                    index = ids.computeIfAbsent(background.getId(), id -> {
+                        names.add(id);
+                        return names.size() - 1;
+                    });
+                }
+                cells[row * world.getNumCols() + col] = index;
+            }
+        }
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        for (int cell : cells) {
+            Varint.writeSigned(out, cell);
+        }
+    }
+
+    private static void readBackgrounds(DataInputStream in, WorldModel world, ImageStore imageStore) throws IOException {
+        List<String> names = new ArrayList<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        for (int row = 0; row < world.getNumRows(); row++) {
+            for (int col = 0; col < world.getNumCols(); col++) {
+                int index = (int) Varint.readSigned(in);
+                Point pos = new Point(col, row);
+                Background current = world.getBackgroundCell(pos);
+                String id = index < 0 ? null : names.get(index);
+                String currentId = current == null ? null : current.getId();
+                if (id != null && !id.equals(currentId)) {
+                    world.setBackgroundCell(pos, new Background(id, imageStore.getImageList(id)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an entity followed by the events it has pending.
+     */
+    static void writeEntityWithEvents(DataOutputStream out, EntityAb entity, EventScheduler scheduler) throws IOException {
+        writeEntity(out, entity);
+        List<Event> pending = entity instanceof Plant plant ? plant.getPendingEvents(scheduler) : scheduler.getPendingEvents(entity);
+        out.writeInt(pending.size());
+        for (Event event : pending) {
+            writeEvent(out, event);
+        }
+    }
+
+    /**
+     * Reads what writeEntityWithEvents wrote and puts the events back on
+     * the scheduler, but leaves adding the entity to the world to the
+     * caller. With resequence, the events keep their times but are
+     * ordered after every event the scheduler already holds, as when the
+     * entity comes from another scheduler.
+     */
+    static EntityAb readEntityWithEvents(DataInputStream in, WorldModel world, EventScheduler scheduler, ImageStore imageStore, boolean resequence) throws IOException {
+        EntityAb entity = readEntity(in, imageStore);
+        int events = in.readInt();
+        for (int i = 0; i < events; i++) {
+            readEvent(in, entity, world, scheduler, imageStore, resequence);
+        }
+        return entity;
+    }
+
+    static void writeEntity(DataOutputStream out, EntityAb entity) throws IOException {
+        out.writeByte(typeOf(entity));
+        out.writeUTF(entity.getId());
+        out.writeLong(entity.getSerial());
+        out.writeInt(entity.getPosition().x);
+        out.writeInt(entity.getPosition().y);
+        out.writeInt(entity.getHealth());
+        out.writeInt(entity.getImageIndex());
+        if (entity instanceof Obstacle obstacle) {
+            out.writeDouble(obstacle.getAnimationPeriod());
+        } else if (entity instanceof Plant plant) {
+            out.writeDouble(plant.getActionPeriod());
+            out.writeDouble(plant.getAnimationPeriod());
+            out.writeInt(plant.getHealthLimit());
+        } else if (entity instanceof Fairy fairy) {
+            out.writeDouble(fairy.getActionPeriod());
+            out.writeDouble(fairy.getAnimationPeriod());
+        } else if (entity instanceof Dude dude) {
+            out.writeInt(dude.getResourceLimit());
+            out.writeInt(dude.getResourceCount());
+            out.writeDouble(dude.getActionPeriod());
+            out.writeDouble(dude.getAnimationPeriod());
+        }
+    }
+
+    private static int typeOf(EntityAb entity) {
+        return switch (entity.getKind()) {
+            case HOUSE -> HOUSE;
+            case OBSTACLE -> OBSTACLE;
+            case TREE -> TREE;
+            case SAPLING -> SAPLING;
+            case STUMP -> STUMP;
+            case FAIRY -> FAIRY;
+            case DUDE_NOT_FULL -> DUDE_NOT_FULL;
+            case DUDE_FULL -> DUDE_FULL;
+        };
+    }
+
+    static EntityAb readEntity(DataInputStream in, ImageStore imageStore) throws IOException {
+        int type = in.readByte();
+        String id = in.readUTF();
+        long serial = in.readLong();
+        Point pos = new Point(in.readInt(), in.readInt());
+        int health = in.readInt();
+        int imageIndex = in.readInt();
+        EntityAb entity = switch (type) {
+            case HOUSE -> Functions.createHouse(id, pos, imageStore.getImageList(Functions.HOUSE_KEY));
+            case OBSTACLE -> Functions.createObstacle(id, pos, in.readDouble(), imageStore.getImageList(Functions.OBSTACLE_KEY));
+            case TREE -> new Plant(EntityKind.TREE, id, pos, imageStore.getImageList(Functions.TREE_KEY), health, in.readDouble(), in.readDouble(), in.readInt());
+            case SAPLING -> new Plant(EntityKind.SAPLING, id, pos, imageStore.getImageList(Functions.SAPLING_KEY), health, in.readDouble(), in.readDouble(), in.readInt());
+            case STUMP -> new Plant(EntityKind.STUMP, id, pos, imageStore.getImageList(Functions.STUMP_KEY), health, in.readDouble(), in.readDouble(), in.readInt());
+            case FAIRY -> Functions.createFairy(id, pos, in.readDouble(), in.readDouble(), imageStore.getImageList(Functions.FAIRY_KEY));
+            case DUDE_NOT_FULL -> new Dude(id, pos, imageStore.getImageList(Functions.DUDE_KEY), false, in.readInt(), in.readInt(), in.readDouble(), in.readDouble());
+            case DUDE_FULL -> new Dude(id, pos, imageStore.getImageList(Functions.DUDE_KEY), true, in.readInt(), in.readInt(), in.readDouble(), in.readDouble());
+            default -> throw new IllegalArgumentException("unknown entity type " + type);
+        };
+        entity.setSerial(serial);
+        entity.setHealth(health);
+        entity.setImageIndex(imageIndex);
+        return entity;
+    }
+
+    private static void writeEvent(DataOutputStream out, Event event) throws IOException {
+        if (event.getAction() instanceof Animation animation) {
+            out.writeByte(ANIMATION);
+            out.writeInt(animation.getRepeatCount());
+        } else {
+            out.writeByte(ACTIVITY);
+        }
+        out.writeDouble(event.getTime());
+        out.writeLong(event.getSequence());
+    }
+
+    private static void readEvent(DataInputStream in, EntityAb entity, WorldModel world, EventScheduler scheduler, ImageStore imageStore, boolean resequence) throws IOException {
+        Action action = switch (in.readByte()) {
+            case ANIMATION -> Functions.createAnimationAction((AnimationEntity) entity, in.readInt());
+            case ACTIVITY -> Functions.createActivityAction((ActivityEntity) entity, world, imageStore);
+            default -> throw new IllegalArgumentException("unknown action type");
+        };
+        double time = in.readDouble();
+        long sequence = in.readLong();
+        if (resequence) {
+            scheduler.scheduleEventAt(entity, action, time);
+        } else {
+            scheduler.restoreEvent(entity, action, time, sequence);
+        }
+    }
+
+    /*
+       Parked agents are written in the order they parked, since that is
+       the order they wake in. Only activities are ever parked.
+    */
+    private static void writeWaiting(DataOutputStream out, WaitingAgent waiting, Map<EntityAb, Integer> indices) throws IOException {
+        if (!(waiting.getAction() instanceof Activity)) {
+            throw new IllegalArgumentException("cannot checkpoint a parked " + waiting.getAction().getClass().getSimpleName());
+        }
+        out.writeInt(indices.get(waiting.getAgent()));
+        out.writeByte(waiting.getKinds().size());
+        for (EntityKind kind : waiting.getKinds()) {
+            out.writeByte(kind.ordinal());
+        }
+        out.writeDouble(waiting.getAfterPeriod());
+    }
+
+    private static void readWaiting(DataInputStream in, List<EntityAb> entities, WorldModel world, ImageStore imageStore) throws IOException {
+        EntityAb agent = entities.get(in.readInt());
+        List<EntityKind> kinds = new ArrayList<>();
+        int count = in.readByte();
+        for (int i = 0; i < count; i++) {
+            kinds.add(EntityKind.values()[in.readByte()]);
+        }
+        world.park(agent, kinds, Functions.createActivityAction((ActivityEntity) agent, world, imageStore), in.readDouble());
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded history of checkpoints taken every few simulated seconds. Most
+ * entries are stored as the difference from the one before, which is small
+ * because little of the world changes between checkpoints; every
+ * KEYFRAME_INTERVAL entries is stored whole. When the ring is full the
+ * oldest entry is dropped and the next one becomes the new keyframe.
+ *
+ * Entities are compared with the entity of the same serial in the entry
+ * before, so adding or removing one leaves the rest of the difference as
+ * small as it was.
+ */
+public final class CheckpointRing {
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    private static final int SAME = 0;
+    private static final int CHANGED = 1;
+    private static final int ADDED = 2;
+
+    private final double interval;
+    private final int capacity;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private Checkpoint.Parts lastState;
+    private int sinceKeyframe;
+    private long storedBytes;
+
+    private static final class Entry {
+        private final double time;
+        private byte[] data;
+        private boolean keyframe;
+
+        private Entry(double time, byte[] data, boolean keyframe) {
+            this.time = time;
+            this.data = data;
+            this.keyframe = keyframe;
+        }
+    }
+
+    public CheckpointRing(double interval, int capacity) {
+        if (interval <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("interval and capacity must be positive");
+        }
+        this.interval = interval;
+        this.capacity = capacity;
+    }
+
+    /**
+     * The simulated time at which the next checkpoint is due.
+     */
+    public double getNextCaptureTime() {
+        return entries.isEmpty() ? 0 : entries.getLast().time + interval;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes;
+    }
+
+    public double getOldestTime() {
+        return entries.isEmpty() ? Double.NaN : entries.getFirst().time;
+    }
+
+    public double getLatestTime() {
+        return entries.isEmpty() ? Double.NaN : entries.getLast().time;
+    }
+
+    /**
+     * Records the current state. Checkpoints older than the latest one are
+     * assumed to lead to it, so capturing at an earlier time (after a seek)
+     * is ignored until the clock passes the latest checkpoint again.
+     */
+    public void capture(WorldModel world, EventScheduler scheduler) {
+        double time = scheduler.getCurrentTime();
+        if (!entries.isEmpty() && time <= entries.getLast().time) {
+            return;
+        }
+        Checkpoint.Parts state = Checkpoint.split(world, scheduler);
+        Entry entry;
+        if (lastState == null || sinceKeyframe >= KEYFRAME_INTERVAL - 1) {
+            entry = new Entry(time, diff(null, state), true);
+            sinceKeyframe = 0;
+        } else {
+            entry = new Entry(time, diff(lastState, state), false);
+            sinceKeyframe++;
+        }
+        entries.addLast(entry);
+        storedBytes += entry.data.length;
+        lastState = state;
+        if (entries.size() > capacity) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        Entry oldest = entries.removeFirst();
+        storedBytes -= oldest.data.length;
+        Entry next = entries.getFirst();
+        if (!next.keyframe) {
+            storedBytes -= next.data.length;
+            next.data = diff(null, patch(patch(null, oldest.data), next.data));
+            next.keyframe = true;
+            storedBytes += next.data.length;
+        }
+    }
+
+    /**
+     * Restores the latest checkpoint taken at or before the given time; the
+     * caller replays forward from there. Returns false, leaving the world
+     * untouched, if the time is earlier than the oldest checkpoint.
+     */
+    public boolean restoreBefore(double time, WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        byte[] state = stateAt(time);
+        if (state == null) {
+            return false;
+        }
+        Checkpoint.restore(state, world, scheduler, imageStore);
+        return true;
+    }
+
+    private byte[] stateAt(double time) {
+        Checkpoint.Parts state = null;
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.time > time) {
+                break;
+            }
+            state = patch(entry.keyframe ? null : state, entry.data);
+        }
+        return state == null ? null : Checkpoint.join(state);
+    }
+
+    /*
+       Encodes a state against the one before it, or whole if there is
+       none. The parts around the entities are written as the XOR against
+       the same parts before. Each entity, in order, is written as its
+       serial, then as unchanged, as the XOR against its record before, or
+       in full if it is new.
+    */
+    static byte[] diff(Checkpoint.Parts previous, Checkpoint.Parts current) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRuns(out, previous == null ? null : previous.getHead(), current.getHead());
+            writeRuns(out, previous == null ? null : previous.getTail(), current.getTail());
+            Varint.write(out, current.getEntities().size());
+            long lastSerial = 0;
+            for (Map.Entry<Long, byte[]> entity : current.getEntities().entrySet()) {
+                Varint.writeSigned(out, entity.getKey() - lastSerial);
+                lastSerial = entity.getKey();
+                byte[] before = previous == null ? null : previous.getEntities().get(entity.getKey());
+                if (before == null) {
+                    Varint.write(out, ADDED);
+                    Varint.write(out, entity.getValue().length);
+                    out.write(entity.getValue());
+                } else if (Arrays.equals(before, entity.getValue())) {
+                    Varint.write(out, SAME);
+                } else {
+                    Varint.write(out, CHANGED);
+                    writeRuns(out, before, entity.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Checkpoint.Parts patch(Checkpoint.Parts previous, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            byte[] head = readRuns(in, previous == null ? null : previous.getHead());
+            byte[] tail = readRuns(in, previous == null ? null : previous.getTail());
+            int count = Varint.readInt(in);
+            LinkedHashMap<Long, byte[]> entities = new LinkedHashMap<>();
+            long serial = 0;
+            for (int i = 0; i < count; i++) {
+                serial += Varint.readSigned(in);
+                int change = Varint.readInt(in);
+                byte[] record;
+                if (change == ADDED) {
+                    record = new byte[Varint.readInt(in)];
+                    in.readFully(record);
+                } else if (change == SAME) {
+                    record = previous.getEntities().get(serial);
+                } else if (change == CHANGED) {
+                    record = readRuns(in, previous.getEntities().get(serial));
+                } else {
+                    throw new IllegalArgumentException("unknown checkpoint change " + change);
+                }
+                entities.put(serial, record);
+            }
+            return new Checkpoint.Parts(head, entities, tail);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+       Encodes the XOR of two byte strings as alternating runs: a count of
+       unchanged bytes, then a count of changed bytes followed by their
+       XOR. Counts are varints, so long unchanged stretches cost a byte or
+       two.
+    */
+    private static void writeRuns(DataOutputStream out, byte[] previous, byte[] current) throws IOException {
+        Varint.write(out, current.length);
+        int i = 0;
+        while (i < current.length) {
+            int start = i;
+            while (i < current.length && xorAt(previous, current, i) == 0) {
+                i++;
+            }
+            Varint.write(out, i - start);
+            start = i;
+            while (i < current.length && xorAt(previous, current, i) != 0) {
+                i++;
+            }
+            Varint.write(out, i - start);
+            for (int j = start; j < i; j++) {
+                out.write(xorAt(previous, current, j));
+            }
+        }
+    }
+
+    private static byte[] readRuns(DataInputStream in, byte[] previous) throws IOException {
+        byte[] current = new byte[Varint.readInt(in)];
+        int i = 0;
+        while (i < current.length) {
+            int same = Varint.readInt(in);
+            for (int end = i + same; i < end; i++) {
+                current[i] = byteAt(previous, i);
+            }
+            int changed = Varint.readInt(in);
+            for (int end = i + changed; i < end; i++) {
+                current[i] = (byte) (byteAt(previous, i) ^ in.readByte());
+            }
+        }
+        return current;
+    }
+
+    private static int xorAt(byte[] previous, byte[] current, int i) {
+        return (byteAt(previous, i) ^ current[i]) & 0xff;
+    }
+
+    private static byte byteAt(byte[] bytes, int i) {
+        return bytes != null && i < bytes.length ? bytes[i] : 0;
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A dude gathers wood from trees and saplings until it carries its limit,
+ * then takes the load to the nearest house and sets out again. Filling up
+ * and emptying out change its state in place, so its cell and animation
+ * carry on across the change.
+ */
+public final class Dude extends EntityAb implements AnimationEntity, ActivityEntity {
+    private static final List<EntityKind> NOT_FULL_TARGETS = List.of(EntityKind.TREE, EntityKind.SAPLING);
+    private static final List<EntityKind> FULL_TARGETS = List.of(EntityKind.HOUSE);
+
+    private boolean full;
+    private int resourceLimit;
+    private int resourceCount;
+    private double actionPeriod;
+    private double animationPeriod;
+
+    public Dude(String id, Point position, List<Sprite> images, boolean full, int resourceLimit, int resourceCount, double actionPeriod, double animationPeriod) {
+        super(full ? EntityKind.DUDE_FULL : EntityKind.DUDE_NOT_FULL, id, position, images, 0, 0);
+        this.full = full;
+        this.resourceLimit = resourceLimit;
+        this.resourceCount = resourceCount;
+        this.actionPeriod = actionPeriod;
+        this.animationPeriod = animationPeriod;
+    }
+
+    public double getAnimationPeriod() {
+        return this.animationPeriod;
+    }
+
+    public double getActionPeriod() {
+        return this.actionPeriod;
+    }
+
+    public int getResourceLimit() {
+        return this.resourceLimit;
+    }
+
+    public int getResourceCount() {
+        return this.resourceCount;
+    }
+
+    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
+        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+        scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.getAnimationPeriod());
+    }
+
+    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
+        List<EntityKind> targets = this.full ? FULL_TARGETS : NOT_FULL_TARGETS;
+        Optional<EntityAb> target = world.findNearest(this.getPosition(), targets);
+
+        if (target.isEmpty()) {
+            world.park(this, targets, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+            return;
+        }
+        if (this.full) {
+            if (this.moveToFull(world, target.get(), scheduler)) {
+                this.setFull(false, world, scheduler);
+            }
+        } else if (this.moveToNotFull(world, target.get(), scheduler) && this.resourceCount >= this.resourceLimit) {
+            this.setFull(true, world, scheduler);
+        }
+        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+    }
+
+    private void setFull(boolean full, WorldModel world, EventScheduler scheduler) {
+        EntityKind from = this.getKind();
+        this.full = full;
+        this.setKind(full ? EntityKind.DUDE_FULL : EntityKind.DUDE_NOT_FULL);
+        if (!full) {
+            world.resourcesChanged(-this.resourceCount);
+            this.resourceCount = 0;
+        }
+        Profiling.transformed(this, from);
+        world.transformed(scheduler, this, from);
+    }
+
+    private boolean moveToNotFull(WorldModel world, Entity target, EventScheduler scheduler) {
+        if (Functions.adjacent(this.getPosition(), target.getPosition())) {
+            this.resourceCount += 1;
+            world.resourcesChanged(1);
+            target.setHealth(target.getHealth() - 1);
+            world.changed(target);
+            return true;
+        } else {
+            Point nextPos = nextPositionDude(world, target.getPosition());
+
+            if (!this.getPosition().equals(nextPos)) {
+                world.moveEntity(scheduler, this, nextPos);
+            }
+            return false;
+        }
+    }
+
+    private boolean moveToFull(WorldModel world, Entity target, EventScheduler scheduler) {
+        if (Functions.adjacent(this.getPosition(), target.getPosition())) {
+            return true;
+        } else {
+            Point nextPos = nextPositionDude(world, target.getPosition());
+
+            if (!this.getPosition().equals(nextPos)) {
+                world.moveEntity(scheduler, this, nextPos);
+            }
+            return false;
+        }
+    }
+
+    /*
+       Both states may step onto a stump. Moving vertically, a dude that is
+       not full may also step onto a sapling, where a full one may not.
+    */
+    private Point nextPositionDude(WorldModel world, Point destPos) {
+        int horiz = Integer.signum(destPos.x - this.getPosition().x);
+        Point newPos = new Point(this.getPosition().x + horiz, this.getPosition().y);
+
+        if (horiz == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getKind() != EntityKind.STUMP) {
+            int vert = Integer.signum(destPos.y - this.getPosition().y);
+            newPos = new Point(this.getPosition().x, this.getPosition().y + vert);
+
+            EntityKind passable = this.full ? EntityKind.STUMP : EntityKind.SAPLING;
+            if (vert == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getKind() != passable) {
+                newPos = this.getPosition();
+            }
+        }
+
+        return newPos;
+    }
+}
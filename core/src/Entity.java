@@ -1,4 +1,3 @@
-import processing.core.PImage;
 
 import java.util.List;
 
@@ -8,14 +7,23 @@ import java.util.List;
  */
 public interface Entity {
     String getId();
+    EntityKind getKind();
     Point getPosition();
     void setPosition(Point pos);
     int getHealth();
     void setHealth(int i);
     int getImageIndex();
-    default PImage getCurrentImage() {
+    default Sprite getCurrentImage() {
         return getImages().get(getImageIndex() % getImages().size());
     }
-    List<PImage> getImages();
+    List<Sprite> getImages();
     String log();
+
+    /**
+     * The order in which this entity entered its world, which decides the
+     * order of its events among others due at the same time.
+     */
+    default long getSerial() {
+        return 0;
+    }
 }
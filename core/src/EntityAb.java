@@ -1,4 +1,3 @@
-import processing.core.PImage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,22 +9,34 @@ import java.util.Optional;
  * different kinds of entities that exist.
  */
 public abstract class EntityAb implements Entity{
+    private EntityKind kind;
     private String id;
     private Point position;
     private int health;
-    private List<PImage> images;
+    private List<Sprite> images;
     private int imageIndex;
+    private long serial = -1;
 
-    public EntityAb(String id, Point position, List<PImage> images, int health, int imageIndex) {
+    public EntityAb(EntityKind kind, String id, Point position, List<Sprite> images, int health, int imageIndex) {
+        this.kind = kind;
         this.id = id;
         this.position = position;
         this.images = images;
         this.health = health;
         this.imageIndex = imageIndex;
     }
+    public EntityKind getKind() {
+        return this.kind;
+    }
+    protected void setKind(EntityKind kind) {
+        this.kind = kind;
+    }
     public String getId() {
         return this.id;
     }
+    protected void setId(String id) {
+        this.id = id;
+    }
     public Point getPosition() {
         return this.position;
     }
@@ -33,9 +44,12 @@ public abstract class EntityAb implements Entity{
     {
         this.position = pos;
     }
-    public List<PImage> getImages() {
+    public List<Sprite> getImages() {
         return images;
     }
+    protected void setImages(List<Sprite> images) {
+        this.images = images;
+    }
     public int getImageIndex() {
         return imageIndex;
     }
@@ -48,12 +62,18 @@ public abstract class EntityAb implements Entity{
     public void setHealth(int i){
         health = i;
     }
+    public long getSerial() {
+        return serial;
+    }
+    void setSerial(long serial) {
+        this.serial = serial;
+    }
     public abstract void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore);
     /**
      * Helper method for testing. Preserve this functionality while refactoring.
      */
     public String log(){
         return this.id.isEmpty() ? null :
-                String.format("%s %d %d %d", this.id, this.position.x, this.position.y, this.imageIndex);
+                String.format("%s %d %d %d", this.id, this.position.x, this.position.y, this.getImageIndex());
     }
 }
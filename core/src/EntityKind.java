@@ -0,0 +1,15 @@
+/**
+ * The kinds of entity in the world. Plants and dudes change kind in place
+ * as they grow, die, fill up or empty out, so an entity's kind is not
+ * fixed by its class.
+ */
+public enum EntityKind {
+    HOUSE,
+    OBSTACLE,
+    TREE,
+    SAPLING,
+    STUMP,
+    FAIRY,
+    DUDE_NOT_FULL,
+    DUDE_FULL
+}
@@ -0,0 +1,52 @@
+/**
+ * An event is made up of an Entity that is taking an
+ * Action a specified time.
+ */
+public final class Event {
+    private final Action action;
+    private final double time;
+    private final Entity entity;
+    private final long rank;
+    private final long sequence;
+
+    public Event(Action action, double time, Entity entity, long sequence) {
+        this.action = action;
+        this.time = time;
+        this.entity = entity;
+        this.rank = rankOf(entity, action instanceof Animation);
+        this.sequence = sequence;
+    }
+
+    /**
+     * Where an entity's animation or other action goes among events due at
+     * the same time: entities that entered the world earlier go first, and
+     * an entity's animation goes before its activity.
+     */
+    public static long rankOf(Entity entity, boolean animation) {
+        return entity.getSerial() * 2 + (animation ? 0 : 1);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public long getRank() {
+        return rank;
+    }
+
+    /**
+     * The order in which this event was scheduled; breaks ties between
+     * events of the same rank due at the same time.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,17 @@
+import java.util.Comparator;
+
+/**
+ * Orders events by time, then by rank, then by sequence. Ranks do not
+ * depend on when an event was scheduled, so an event put on the queue late
+ * still runs where it would have run had it been scheduled on time.
+ */
+public final class EventComparator implements Comparator<Event> {
+    public int compare(Event lft, Event rht) {
+        int byTime = Double.compare(lft.getTime(), rht.getTime());
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byRank = Long.compare(lft.getRank(), rht.getRank());
+        return byRank != 0 ? byRank : Long.compare(lft.getSequence(), rht.getSequence());
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * The format of the event logs EventRecorder writes and EventReplayer
+ * reads. A log starts with MAGIC and VERSION and is then a sequence of
+ * records, the first of which describes every entity in the world when
+ * recording began.
+ *
+ * A record starts with a type byte: ACTIVITY, ANIMATION or OTHER for an
+ * event, by the kind of its action, or EXTERNAL for changes made between
+ * events. TIME_CHANGED is set when the record's time differs from the one
+ * before it, and the time then follows as a double. Then comes a varint
+ * count of entries besides the event's own entity, and the entries, the
+ * event's entity first.
+ *
+ * An entry is a varint handle and a byte of flags saying which fields
+ * follow: the id, the kind's ordinal, the position, the health and the
+ * image index. Only fields that changed since the entity's last entry are
+ * written; an entity's first entry is flagged SPAWNED and has them all.
+ * REMOVED alone means the entity left the world, and its handle is not
+ * used again.
+ */
+public final class EventLog {
+    static final int MAGIC = 0x464c4f47;
+    static final int VERSION = 1;
+
+    static final int ACTIVITY = 0;
+    static final int ANIMATION = 1;
+    static final int OTHER = 2;
+    static final int EXTERNAL = 3;
+    static final int TYPE_MASK = 3;
+    static final int TIME_CHANGED = 4;
+
+    static final int ID = 1;
+    static final int KIND = 2;
+    static final int POSITION = 4;
+    static final int HEALTH = 8;
+    static final int IMAGE = 16;
+    static final int SPAWNED = 32;
+    static final int REMOVED = 64;
+
+    private EventLog() {
+    }
+}
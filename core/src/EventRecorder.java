@@ -0,0 +1,367 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records every event a simulation runs, with the state each event left
+ * behind, to an append-only log that EventReplayer can read back. See
+ * EventLog for the format.
+ *
+ * Records are encoded on the simulation thread into chunks, and a
+ * background thread writes the chunks out. At most QUEUED_CHUNKS chunks
+ * wait to be written; past that the simulation waits for the writer, so
+ * a slow disk slows the run down rather than using up memory.
+ *
+ * A recorder made with verifier writes nothing. Instead it compares each
+ * record with the next one in an existing log, and notes the first event
+ * at which the run differs from the one that was recorded.
+ *
+ * A log needs every event, so worlds with dormancy enabled cannot be
+ * recorded.
+ */
+public final class EventRecorder implements SchedulerListener, WorldListener, Closeable {
+    private static final int CHUNK_BYTES = 64 * 1024;
+    private static final int QUEUED_CHUNKS = 16;
+    private static final byte[] END_OF_CHUNKS = new byte[0];
+
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+    private final OutputStream sink;
+    private final BlockingQueue<byte[]> chunks;
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_BYTES);
+    private Thread writer;
+    private volatile IOException writeFailure;
+
+    private final DataInputStream expected;
+    private String divergence;
+
+    /*
+       What the log last said about each entity, by handle. Handles are
+       given out in the order entities are first seen.
+    */
+    private final Map<Entity, Integer> handles = new IdentityHashMap<>();
+    private Entity[] entities = new Entity[64];
+    private String[] ids = new String[64];
+    private byte[] kinds = new byte[64];
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int[] healths = new int[64];
+    private int[] images = new int[64];
+    private boolean[] removed = new boolean[64];
+    private long[] touchedStamps = new long[64];
+    private int[] touched = new int[16];
+    private int touchedCount;
+    private long stamp = 1;
+    private int nextHandle;
+    private double lastTime = Double.NaN;
+    private long events;
+
+    private EventRecorder(WorldModel world, EventScheduler scheduler, OutputStream sink, DataInputStream expected) throws IOException {
+        if (world.isDormancyEnabled()) {
+            throw new IllegalArgumentException("cannot record a world with dormancy enabled");
+        }
+        this.world = world;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.expected = expected;
+        this.chunks = sink == null ? null : new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        if (sink != null) {
+            this.writer = new Thread(this::writeChunks, "event log writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        record.writeInt(EventLog.MAGIC);
+        record.writeByte(EventLog.VERSION);
+        for (EntityAb entity : world.getEntities()) {
+            touch(handleOf(entity));
+        }
+        encode(EventLog.EXTERNAL, scheduler.getCurrentTime(), -1);
+        world.addListener(this);
+        scheduler.addListener(this);
+    }
+
+    /**
+     * Starts recording the given simulation to the stream, beginning with
+     * every entity now in its world.
+     */
+    public static EventRecorder recorder(Simulation simulation, OutputStream out) throws IOException {
+        return new EventRecorder(simulation.getWorld(), simulation.getScheduler(), out, null);
+    }
+
+    /**
+     * Starts checking the given simulation against a log recorded from the
+     * same world and seed.
+     */
+    public static EventRecorder verifier(Simulation simulation, DataInputStream log) throws IOException {
+        return new EventRecorder(simulation.getWorld(), simulation.getScheduler(), null, log);
+    }
+
+    public long getEventsRecorded() {
+        return events;
+    }
+
+    /**
+     * For a verifier, a description of the first event that differed from
+     * the log, or null if none has.
+     */
+    public String getDivergence() {
+        return divergence;
+    }
+
+    /*
+       Changes made between events, such as restoring a checkpoint, are
+       recorded on their own before the next event runs.
+    */
+    public void eventStarting(Event event) {
+        if (touchedCount > 0) {
+            encode(EventLog.EXTERNAL, scheduler.getCurrentTime(), -1);
+        }
+    }
+
+    public void eventRun(Event event) {
+        Action action = event.getAction();
+        int type = action instanceof Activity ? EventLog.ACTIVITY : action instanceof Animation ? EventLog.ANIMATION : EventLog.OTHER;
+        encode(type, event.getTime(), handleOf(event.getEntity()));
+        events++;
+    }
+
+    public void entityAdded(Entity entity) {
+        Integer handle = handles.get(entity);
+        if (handle != null) {
+            removed[handle] = false;
+        }
+        touch(handleOf(entity));
+    }
+
+    public void entityRemoved(Entity entity) {
+        Integer handle = handles.get(entity);
+        if (handle != null) {
+            removed[handle] = true;
+            touch(handle);
+        }
+    }
+
+    public void entityChanged(Entity entity) {
+        touch(handleOf(entity));
+    }
+
+    /**
+     * Stops recording and waits for everything recorded to be written.
+     */
+    public void close() throws IOException {
+        world.removeListener(this);
+        scheduler.removeListener(this);
+        if (touchedCount > 0) {
+            encode(EventLog.EXTERNAL, scheduler.getCurrentTime(), -1);
+        }
+        if (sink != null) {
+            handOff();
+            put(END_OF_CHUNKS);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sink.close();
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+        }
+    }
+
+    private int handleOf(Entity entity) {
+        Integer handle = handles.get(entity);
+        if (handle == null) {
+            handle = nextHandle++;
+            if (handle == entities.length) {
+                grow();
+            }
+            handles.put(entity, handle);
+            entities[handle] = entity;
+        }
+        return handle;
+    }
+
+    private void grow() {
+        int size = entities.length * 2;
+        entities = Arrays.copyOf(entities, size);
+        ids = Arrays.copyOf(ids, size);
+        kinds = Arrays.copyOf(kinds, size);
+        xs = Arrays.copyOf(xs, size);
+        ys = Arrays.copyOf(ys, size);
+        healths = Arrays.copyOf(healths, size);
+        images = Arrays.copyOf(images, size);
+        removed = Arrays.copyOf(removed, size);
+        touchedStamps = Arrays.copyOf(touchedStamps, size);
+    }
+
+    private void touch(int handle) {
+        if (touchedStamps[handle] != stamp) {
+            touchedStamps[handle] = stamp;
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = handle;
+        }
+    }
+
+    /*
+       One record: its type, the time if it changed, then an entry for the
+       event's entity (if any) and for every other entity it touched.
+    */
+    private void encode(int type, double time, int actor) {
+        try {
+            boolean timeChanged = Double.compare(time, lastTime) != 0;
+            record.writeByte(type | (timeChanged ? EventLog.TIME_CHANGED : 0));
+            if (timeChanged) {
+                record.writeDouble(time);
+                lastTime = time;
+            }
+            int others = touchedCount;
+            if (actor >= 0 && touchedStamps[actor] == stamp) {
+                others--;
+            }
+            Varint.write(record, others);
+            if (actor >= 0) {
+                encodeEntry(actor);
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                if (touched[i] != actor) {
+                    encodeEntry(touched[i]);
+                }
+            }
+            touchedCount = 0;
+            stamp++;
+            emit();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encodeEntry(int handle) throws IOException {
+        Varint.write(record, handle);
+        Entity entity = entities[handle];
+        if (removed[handle]) {
+            record.writeByte(EventLog.REMOVED);
+            handles.remove(entity);
+            entities[handle] = null;
+            ids[handle] = null;
+            return;
+        }
+        boolean spawned = ids[handle] == null;
+        String id = entity.getId();
+        Point position = entity.getPosition();
+        int kind = entity.getKind().ordinal();
+        int mask = spawned ? EventLog.SPAWNED : 0;
+        if (spawned || !id.equals(ids[handle])) {
+            mask |= EventLog.ID;
+        }
+        if (spawned || kind != kinds[handle]) {
+            mask |= EventLog.KIND;
+        }
+        if (spawned || position.x != xs[handle] || position.y != ys[handle]) {
+            mask |= EventLog.POSITION;
+        }
+        if (spawned || entity.getHealth() != healths[handle]) {
+            mask |= EventLog.HEALTH;
+        }
+        if (spawned || entity.getImageIndex() != images[handle]) {
+            mask |= EventLog.IMAGE;
+        }
+        record.writeByte(mask);
+        if ((mask & EventLog.ID) != 0) {
+            record.writeUTF(id);
+            ids[handle] = id;
+        }
+        if ((mask & EventLog.KIND) != 0) {
+            record.writeByte(kind);
+            kinds[handle] = (byte) kind;
+        }
+        if ((mask & EventLog.POSITION) != 0) {
+            Varint.writeSigned(record, position.x);
+            Varint.writeSigned(record, position.y);
+            xs[handle] = position.x;
+            ys[handle] = position.y;
+        }
+        if ((mask & EventLog.HEALTH) != 0) {
+            Varint.writeSigned(record, entity.getHealth());
+            healths[handle] = entity.getHealth();
+        }
+        if ((mask & EventLog.IMAGE) != 0) {
+            Varint.write(record, entity.getImageIndex());
+            images[handle] = entity.getImageIndex();
+        }
+    }
+
+    private void emit() throws IOException {
+        record.flush();
+        if (sink != null) {
+            recordBytes.writeTo(chunk);
+            if (chunk.size() >= CHUNK_BYTES) {
+                handOff();
+            }
+        } else if (divergence == null) {
+            compare();
+        }
+        recordBytes.reset();
+    }
+
+    private void compare() throws IOException {
+        byte[] actual = recordBytes.toByteArray();
+        byte[] logged = expected.readNBytes(actual.length);
+        if (!Arrays.equals(actual, logged)) {
+            divergence = String.format("event %d at time %.3f differs from the log%s", events, scheduler.getCurrentTime(),
+                    logged.length < actual.length ? ", which ends there" : "");
+        }
+    }
+
+    private void handOff() throws IOException {
+        if (chunk.size() > 0) {
+            put(chunk.toByteArray());
+            chunk.reset();
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+
+    private void put(byte[] bytes) {
+        try {
+            chunks.put(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeChunks() {
+        try {
+            for (byte[] bytes = chunks.take(); bytes != END_OF_CHUNKS; bytes = chunks.take()) {
+                if (writeFailure == null) {
+                    try {
+                        sink.write(bytes);
+                    } catch (IOException e) {
+                        writeFailure = e;
+                    }
+                }
+            }
+            sink.flush();
+        } catch (IOException e) {
+            writeFailure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rebuilds the state of a recorded world from an event log, without
+ * running any entity logic: each record only overwrites the fields it
+ * carries. Entities are kept in the order they entered the world, so the
+ * replayed log lines come out as WorldModel.log would give them.
+ */
+public final class EventReplayer {
+    private final DataInputStream in;
+    private String[] ids = new String[64];
+    private EntityKind[] kinds = new EntityKind[64];
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int[] healths = new int[64];
+    private int[] images = new int[64];
+    private final Set<Integer> present = new LinkedHashSet<>();
+    private double time;
+    private double recordTime;
+    private long eventsReplayed;
+    private int pendingType = -1;
+    private boolean ended;
+
+    public EventReplayer(InputStream log) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(log));
+        if (in.readInt() != EventLog.MAGIC || in.readUnsignedByte() != EventLog.VERSION) {
+            throw new IOException("not an event log");
+        }
+        if (!peek()) {
+            throw new IOException("event log has no initial state");
+        }
+        apply();
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getEventsReplayed() {
+        return eventsReplayed;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Applies every record up to and including the given time. Returns
+     * false once the log has run out.
+     */
+    public boolean advanceTo(double stopTime) throws IOException {
+        while (peek()) {
+            if (recordTime > stopTime) {
+                return true;
+            }
+            apply();
+        }
+        return false;
+    }
+
+    /**
+     * Applies the next record. Returns false if there is none.
+     */
+    public boolean step() throws IOException {
+        if (!peek()) {
+            return false;
+        }
+        apply();
+        return true;
+    }
+
+    public List<String> log() {
+        List<String> log = new ArrayList<>();
+        for (int handle : present) {
+            if (!ids[handle].isEmpty()) {
+                log.add(String.format("%s %d %d %d", ids[handle], xs[handle], ys[handle], images[handle]));
+            }
+        }
+        return log;
+    }
+
+    public int[] countKinds() {
+        int[] counts = new int[EntityKind.values().length];
+        for (int handle : present) {
+            counts[kinds[handle].ordinal()]++;
+        }
+        return counts;
+    }
+
+    /*
+       Reads the type and time of the next record, if that has not been
+       done already, so that advanceTo can stop before a record that is
+       not yet due.
+    */
+    private boolean peek() throws IOException {
+        if (pendingType < 0 && !ended) {
+            int type = in.read();
+            if (type < 0) {
+                ended = true;
+                return false;
+            }
+            if ((type & EventLog.TIME_CHANGED) != 0) {
+                recordTime = in.readDouble();
+            }
+            pendingType = type & EventLog.TYPE_MASK;
+        }
+        return pendingType >= 0;
+    }
+
+    private void apply() throws IOException {
+        time = recordTime;
+        int entries = Varint.readInt(in);
+        if (pendingType != EventLog.EXTERNAL) {
+            entries++;
+            eventsReplayed++;
+        }
+        pendingType = -1;
+        for (int i = 0; i < entries; i++) {
+            applyEntry();
+        }
+    }
+
+    private void applyEntry() throws IOException {
+        int handle = Varint.readInt(in);
+        if (handle >= ids.length) {
+            grow(handle);
+        }
+        int mask = in.readUnsignedByte();
+        if (mask == EventLog.REMOVED) {
+            present.remove(handle);
+            return;
+        }
+        if ((mask & EventLog.SPAWNED) != 0) {
+            present.add(handle);
+        }
+        if ((mask & EventLog.ID) != 0) {
+            ids[handle] = in.readUTF();
+        }
+        if ((mask & EventLog.KIND) != 0) {
+            kinds[handle] = EntityKind.values()[in.readUnsignedByte()];
+        }
+        if ((mask & EventLog.POSITION) != 0) {
+            xs[handle] = (int) Varint.readSigned(in);
+            ys[handle] = (int) Varint.readSigned(in);
+        }
+        if ((mask & EventLog.HEALTH) != 0) {
+            healths[handle] = (int) Varint.readSigned(in);
+        }
+        if ((mask & EventLog.IMAGE) != 0) {
+            images[handle] = Varint.readInt(in);
+        }
+    }
+
+    private void grow(int handle) {
+        int size = Math.max(ids.length * 2, handle + 1);
+        ids = Arrays.copyOf(ids, size);
+        kinds = Arrays.copyOf(kinds, size);
+        xs = Arrays.copyOf(xs, size);
+        ys = Arrays.copyOf(ys, size);
+        healths = Arrays.copyOf(healths, size);
+        images = Arrays.copyOf(images, size);
+    }
+
+    /*
+       Usage: EventReplayer <log> [seconds]
+       Replays the log, or its first seconds of simulated time, and prints
+       how fast that went.
+    */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: EventReplayer <log> [seconds]");
+            return;
+        }
+        long start = System.nanoTime();
+        try (InputStream log = Files.newInputStream(Path.of(args[0]))) {
+            EventReplayer replayer = new EventReplayer(log);
+            double startTime = replayer.getTime();
+            replayer.advanceTo(args.length > 1 ? startTime + Double.parseDouble(args[1]) : Double.POSITIVE_INFINITY);
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+            double simulated = replayer.getTime() - startTime;
+            System.out.printf("Replayed %d events, %.1f simulated seconds, in %.3f s (%.0f events/s, %.0fx real time)%n",
+                    replayer.getEventsReplayed(), simulated, wallSeconds, replayer.getEventsReplayed() / wallSeconds, simulated / wallSeconds);
+        } catch (EOFException e) {
+            System.err.println("event log ends in the middle of a record");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.*;
+
+/**
+ * Keeps track of events that have been scheduled.
+ */
+public final class EventScheduler {
+    private final PriorityQueue<Event> eventQueue;
+    private final Map<Entity, List<Event>> pendingEvents;
+    private final List<SchedulerListener> listeners = new ArrayList<>();
+    private double currentTime;
+    private long eventsProcessed;
+    private long nextSequence;
+    /*
+       Every event ordered before (frontierTime, frontierRank) has run.
+    */
+    private double frontierTime;
+    private long frontierRank = Long.MIN_VALUE;
+
+    public EventScheduler() {
+        this.eventQueue = new PriorityQueue<>(new EventComparator());
+        this.pendingEvents = new HashMap<>();
+        this.currentTime = 0;
+    }
+
+    public double getCurrentTime() {
+        return currentTime;
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public int getQueueSize() {
+        return this.eventQueue.size();
+    }
+
+    public void addListener(SchedulerListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(SchedulerListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public boolean hasPendingEvents(Entity entity) {
+        List<Event> pending = this.pendingEvents.get(entity);
+        return pending != null && !pending.isEmpty();
+    }
+
+    /**
+     * The events still due for the given entity, in the order they run.
+     */
+    public List<Event> getPendingEvents(Entity entity) {
+        List<Event> pending = new ArrayList<>(this.pendingEvents.getOrDefault(entity, Collections.emptyList()));
+        pending.sort(this.eventQueue.comparator());
+        return pending;
+    }
+
+    /**
+     * Whether an event of the given rank due at the given time would have
+     * run by now. While an event runs, this holds for exactly the events
+     * ordered before it.
+     */
+    public boolean hasRun(double time, long rank) {
+        return time < this.frontierTime || (time == this.frontierTime && rank < this.frontierRank);
+    }
+
+    /**
+     * Drops every pending event and resets the clock, as the first step of
+     * restoring a checkpoint; restoreEvent then puts its events back.
+     */
+    public void restore(double currentTime, long nextSequence) {
+        this.eventQueue.clear();
+        this.pendingEvents.clear();
+        this.currentTime = currentTime;
+        this.nextSequence = nextSequence;
+        this.frontierTime = currentTime;
+        this.frontierRank = Long.MAX_VALUE;
+    }
+
+    public void restoreEvent(Entity entity, Action action, double time, long sequence) {
+        Event event = new Event(action, time, entity, sequence);
+        this.eventQueue.add(event);
+        this.pendingEvents.computeIfAbsent(entity, e -> new LinkedList<>()).add(event);
+    }
+
+    public void scheduleEvent(Entity entity, Action action, double afterPeriod) {
+        scheduleEventAt(entity, action, this.currentTime + afterPeriod);
+    }
+
+    public void scheduleEventAt(Entity entity, Action action, double time) {
+        Event event = new Event(action, time, entity, this.nextSequence++);
+
+        this.eventQueue.add(event);
+
+        // update list of pending events for the given entity
+        List<Event> pending = this.pendingEvents.getOrDefault(entity, new LinkedList<>());
+        pending.add(event);
+        this.pendingEvents.put(entity, pending);
+    }
+
+    public void unscheduleAllEvents(Entity entity) {
+        List<Event> pending = this.pendingEvents.remove(entity);
+
+        if (pending != null) {
+            for (Event event : pending) {
+                this.eventQueue.remove(event);
+            }
+        }
+    }
+
+    public void removePendingEvent(Event event) {
+        List<Event> pending = this.pendingEvents.get(event.getEntity());
+
+        if (pending != null) {
+            pending.remove(event);
+        }
+    }
+
+    public void updateOnTime(double time) {
+        advanceTo(this.currentTime + time, Long.MAX_VALUE);
+    }
+
+    /**
+     * Runs events due by stopTime, but no more than maxEvents of them. If
+     * every due event ran, the clock moves to stopTime (unless it is
+     * infinite); otherwise it stays at the last event run. Returns the
+     * number of events run.
+     */
+    public long advanceTo(double stopTime, long maxEvents) {
+        return advanceBefore(stopTime, Long.MAX_VALUE, maxEvents);
+    }
+
+    /**
+     * Runs events ordered before the given time and rank, in the same way
+     * advanceTo runs events due by a time. Once they have all run, the
+     * clock stands at exactly that point in the order, so a caller can
+     * slot in a change of its own there.
+     */
+    public long advanceBefore(double stopTime, long stopRank, long maxEvents) {
+        TickEvent tick = null;
+        if (Profiling.isActive()) {
+            tick = new TickEvent();
+            tick.begin();
+        }
+        double startTime = this.currentTime;
+        long processed = 0;
+        while (processed < maxEvents && !this.eventQueue.isEmpty() && isBefore(this.eventQueue.peek(), stopTime, stopRank)) {
+            Event next = this.eventQueue.poll();
+            this.removePendingEvent(next);
+            this.currentTime = next.getTime();
+            this.frontierTime = this.currentTime;
+            this.frontierRank = next.getRank();
+            if (this.listeners.isEmpty()) {
+                next.getAction().executeAction(this);
+            } else {
+                runObserved(next);
+            }
+            processed++;
+        }
+        this.eventsProcessed += processed;
+        if (processed < maxEvents && !Double.isInfinite(stopTime)) {
+            this.currentTime = stopTime;
+            if (isBefore(this.frontierTime, this.frontierRank, stopTime, stopRank)) {
+                this.frontierTime = stopTime;
+                this.frontierRank = stopRank;
+            }
+        } else if (processed > 0) {
+            this.frontierRank++;
+        }
+        if (tick != null && tick.shouldCommit()) {
+            tick.commit(processed, startTime, this.currentTime - startTime, this.eventQueue.size());
+        }
+        return processed;
+    }
+
+    private static boolean isBefore(Event event, double time, long rank) {
+        return isBefore(event.getTime(), event.getRank(), time, rank);
+    }
+
+    private static boolean isBefore(double time, long rank, double otherTime, long otherRank) {
+        return time < otherTime || (time == otherTime && rank < otherRank);
+    }
+
+    private void runObserved(Event event) {
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).eventStarting(event);
+        }
+        event.getAction().executeAction(this);
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).eventRun(event);
+        }
+    }
+
+    public boolean isIdle() {
+        return this.eventQueue.isEmpty();
+    }
+}
@@ -1,6 +1,4 @@
-import processing.core.PImage;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,16 +9,15 @@ import java.util.Optional;
 public final class Fairy extends EntityAb implements AnimationEntity, ActivityEntity {
     private double actionPeriod;
     private double animationPeriod;
-    private static final String SAPLING_KEY = "sapling";
+    private static final List<EntityKind> TARGETS = List.of(EntityKind.STUMP);
 
-    public Fairy(String id, Point position, List<PImage> images, double actionPeriod, double animationPeriod) {
-        super(id, position, images, 0, 0);
+    public Fairy(String id, Point position, List<Sprite> images, double actionPeriod, double animationPeriod) {
+        super(EntityKind.FAIRY, id, position, images, 0, 0);
         this.actionPeriod = actionPeriod;
         this.animationPeriod = animationPeriod;
     }
     private boolean moveToFairy(WorldModel world, Entity target, EventScheduler scheduler) {
         if (Functions.adjacent(this.getPosition(), target.getPosition())) {
-            world.removeEntity(scheduler, target);
             return true;
         } else {
             Point nextPos = nextPositionFairy(world, target.getPosition());
@@ -32,18 +29,14 @@ public final class Fairy extends EntityAb implements AnimationEntity, ActivityEn
         }
     }
     public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<EntityAb> fairyTarget = world.findNearest(this.getPosition(), new ArrayList<>(List.of(Stump.class)));
+        Optional<EntityAb> fairyTarget = world.findNearest(this.getPosition(), TARGETS);
 
-        if (fairyTarget.isPresent()) {
-            Point tgtPos = fairyTarget.get().getPosition();
-
-            if (this.moveToFairy(world, fairyTarget.get(), scheduler)) {
-
-                Sapling sapling = Functions.createSapling(SAPLING_KEY + "_" + fairyTarget.get().getId(), tgtPos, imageStore.getImageList(this.SAPLING_KEY), 0);
-
-                world.addEntity(sapling);
-                sapling.scheduleActions(scheduler, world, imageStore);
-            }
+        if (fairyTarget.isEmpty()) {
+            world.park(this, TARGETS, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+            return;
+        }
+        if (this.moveToFairy(world, fairyTarget.get(), scheduler)) {
+            ((Plant) fairyTarget.get()).sprout(world, scheduler, imageStore);
         }
 
         scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
@@ -52,11 +45,11 @@ public final class Fairy extends EntityAb implements AnimationEntity, ActivityEn
         int horiz = Integer.signum(destPos.x - this.getPosition().x);
         Point newPos = new Point(this.getPosition().x + horiz, this.getPosition().y);
 
-        if (horiz == 0 || world.isOccupied(newPos)  && world.getOccupancyCell(newPos).getClass() != House.class) {
+        if (horiz == 0 || world.isOccupied(newPos)  && world.getOccupancyCell(newPos).getKind() != EntityKind.HOUSE) {
             int vert = Integer.signum(destPos.y - this.getPosition().y);
             newPos = new Point(this.getPosition().x, this.getPosition().y + vert);
 
-            if (vert == 0 || world.isOccupied(newPos)  && world.getOccupancyCell(newPos).getClass() != House.class) {
+            if (vert == 0 || world.isOccupied(newPos)  && world.getOccupancyCell(newPos).getKind() != EntityKind.HOUSE) {
                 newPos = this.getPosition();
             }
         }
@@ -71,5 +64,9 @@ public final class Fairy extends EntityAb implements AnimationEntity, ActivityEn
         return animationPeriod;
     }
 
+    public double getActionPeriod() {
+        return this.actionPeriod;
+    }
+
 
 }
@@ -0,0 +1,69 @@
+/**
+ * Advances a scheduler as fast as the CPU allows, without regard to wall
+ * time, until a target simulated time or event count is reached. Work can
+ * be done in wall-time slices so that a window can still be redrawn now
+ * and then.
+ */
+public final class FastForward {
+    private static final long BATCH_EVENTS = 4096;
+
+    private final EventScheduler scheduler;
+    private final double targetTime;
+    private final long targetEvents;
+    private final double startTime;
+    private final long startEvents;
+    private final long startNanos;
+    private long wallNanos;
+    private boolean done;
+
+    /**
+     * A non-positive seconds or maxEvents means that limit does not apply.
+     */
+    public FastForward(EventScheduler scheduler, double seconds, long maxEvents) {
+        this.scheduler = scheduler;
+        this.startTime = scheduler.getCurrentTime();
+        this.startEvents = scheduler.getEventsProcessed();
+        this.targetTime = seconds > 0 ? this.startTime + seconds : Double.POSITIVE_INFINITY;
+        this.targetEvents = maxEvents > 0 ? maxEvents : Long.MAX_VALUE;
+        this.startNanos = System.nanoTime();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Runs events for roughly the given wall time. Returns true once the
+     * target is reached or no events are left.
+     */
+    public boolean step(long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        while (!this.done && System.nanoTime() < deadline) {
+            long remaining = this.targetEvents - eventsRun();
+            long processed = this.scheduler.advanceTo(this.targetTime, Math.min(BATCH_EVENTS, remaining));
+            this.done = processed == remaining || processed < BATCH_EVENTS || this.scheduler.isIdle();
+        }
+        if (this.done) {
+            this.wallNanos = System.nanoTime() - this.startNanos;
+        }
+        return this.done;
+    }
+
+    public void runToCompletion() {
+        step(Long.MAX_VALUE / 2);
+    }
+
+    public long eventsRun() {
+        return this.scheduler.getEventsProcessed() - this.startEvents;
+    }
+
+    public double simulatedSeconds() {
+        return this.scheduler.getCurrentTime() - this.startTime;
+    }
+
+    public String report() {
+        double wallSeconds = (this.done ? this.wallNanos : System.nanoTime() - this.startNanos) / 1e9;
+        return String.format("Fast-forwarded %.1f simulated s (%d events) in %.3f wall s: %.0f events/s, %.1f simulated s per wall s",
+                simulatedSeconds(), eventsRun(), wallSeconds, eventsRun() / wallSeconds, simulatedSeconds() / wallSeconds);
+    }
+}
@@ -1,7 +1,5 @@
 import java.util.*;
 
-import processing.core.PImage;
-import processing.core.PApplet;
 
 import javax.swing.text.html.parser.Entity;
 
@@ -11,47 +9,42 @@ import javax.swing.text.html.parser.Entity;
  * by refactoring this codebase to follow an OOP style.
  */
 public final class Functions {
-    private static final Random rand = new Random();
-
-    private static final int COLOR_MASK = 0xffffff;
+    private static final int OPAQUE = 0xff000000;
     private static final int KEYED_IMAGE_MIN = 5;
     private static final int KEYED_RED_IDX = 2;
     private static final int KEYED_GREEN_IDX = 3;
     private static final int KEYED_BLUE_IDX = 4;
 
-    private static final String SAPLING_KEY = "sapling";
+    public static final String SAPLING_KEY = "sapling";
 
     private static final List<String> PATH_KEYS = new ArrayList<>(Arrays.asList("bridge", "dirt", "dirt_horiz", "dirt_vert_left", "dirt_vert_right", "dirt_bot_left_corner", "dirt_bot_right_up", "dirt_vert_left_bot"));
 
-    private static final double SAPLING_ACTION_ANIMATION_PERIOD = 1.000; // have to be in sync since grows and gains health at same time
-    private static final int SAPLING_HEALTH_LIMIT = 5;
-
     private static final int PROPERTY_KEY = 0;
     private static final int PROPERTY_ID = 1;
     private static final int PROPERTY_COL = 2;
     private static final int PROPERTY_ROW = 3;
     private static final int ENTITY_NUM_PROPERTIES = 4;
 
-    private static final String STUMP_KEY = "stump";
+    public static final String STUMP_KEY = "stump";
     private static final int STUMP_NUM_PROPERTIES = 0;
 
     private static final int SAPLING_HEALTH = 0;
     private static final int SAPLING_NUM_PROPERTIES = 1;
 
-    private static final String OBSTACLE_KEY = "obstacle";
+    public static final String OBSTACLE_KEY = "obstacle";
     private static final int OBSTACLE_ANIMATION_PERIOD = 0;
     private static final int OBSTACLE_NUM_PROPERTIES = 1;
 
-    private static final String DUDE_KEY = "dude";
+    public static final String DUDE_KEY = "dude";
     private static final int DUDE_ACTION_PERIOD = 0;
     private static final int DUDE_ANIMATION_PERIOD = 1;
     private static final int DUDE_LIMIT = 2;
     private static final int DUDE_NUM_PROPERTIES = 3;
 
-    private static final String HOUSE_KEY = "house";
+    public static final String HOUSE_KEY = "house";
     private static final int HOUSE_NUM_PROPERTIES = 0;
 
-    private static final String FAIRY_KEY = "fairy";
+    public static final String FAIRY_KEY = "fairy";
     private static final int FAIRY_ANIMATION_PERIOD = 0;
     private static final int FAIRY_ACTION_PERIOD = 1;
     private static final int FAIRY_NUM_PROPERTIES = 2;
@@ -59,7 +52,7 @@ public final class Functions {
     public static final int TREE_ACTION_PERIOD = 1;
     public static final int TREE_HEALTH = 2;
     public static final int TREE_NUM_PROPERTIES = 3;
-    private static final String TREE_KEY = "tree";
+    public static final String TREE_KEY = "tree";
 
 
 
@@ -67,13 +60,11 @@ public final class Functions {
         return (p1.x == p2.x && Math.abs(p1.y - p2.y) == 1) || (p1.y == p2.y && Math.abs(p1.x - p2.x) == 1);
     }
 
-    public static int getIntFromRange(int max, int min) {
-        Random rand = new Random();
+    public static int getIntFromRange(WorldRandom rand, int max, int min) {
         return min + rand.nextInt(max-min);
     }
 
-    public static double getNumFromRange(double max, double min) {
-        Random rand = new Random();
+    public static double getNumFromRange(WorldRandom rand, double max, double min) {
         return min + rand.nextDouble() * (max - min);
     }
 
@@ -81,7 +72,7 @@ public final class Functions {
     public static void parseSapling(WorldModel world, String[] properties, Point pt, String id, ImageStore imageStore) {
         if (properties.length == SAPLING_NUM_PROPERTIES) {
             int health = Integer.parseInt(properties[SAPLING_HEALTH]);
-            Sapling entity = createSapling(id, pt, imageStore.getImageList(SAPLING_KEY), health);
+            Plant entity = createSapling(id, pt, imageStore.getImageList(SAPLING_KEY), health);
             world.tryAddEntity(entity);
         }else{
             throw new IllegalArgumentException(String.format("%s requires %d properties when parsing", SAPLING_KEY, SAPLING_NUM_PROPERTIES));
@@ -90,7 +81,7 @@ public final class Functions {
 
     public static void parseDude(WorldModel world, String[] properties, Point pt, String id, ImageStore imageStore) {
         if (properties.length == DUDE_NUM_PROPERTIES) {
-            Dude_Not_Full entity = createDudeNotFull(id, pt, Double.parseDouble(properties[DUDE_ACTION_PERIOD]), Double.parseDouble(properties[DUDE_ANIMATION_PERIOD]), Integer.parseInt(properties[DUDE_LIMIT]), imageStore.getImageList(DUDE_KEY));
+            Dude entity = createDudeNotFull(id, pt, Double.parseDouble(properties[DUDE_ACTION_PERIOD]), Double.parseDouble(properties[DUDE_ANIMATION_PERIOD]), Integer.parseInt(properties[DUDE_LIMIT]), imageStore.getImageList(DUDE_KEY));
             world.tryAddEntity(entity);
         }else{
             throw new IllegalArgumentException(String.format("%s requires %d properties when parsing", DUDE_KEY, DUDE_NUM_PROPERTIES));
@@ -108,7 +99,7 @@ public final class Functions {
 
     public static void parseTree(WorldModel world, String[] properties, Point pt, String id, ImageStore imageStore) {
         if (properties.length == Functions.TREE_NUM_PROPERTIES) {
-            Tree entity = createTree(id, pt, Double.parseDouble(properties[TREE_ACTION_PERIOD]), Double.parseDouble(properties[TREE_ANIMATION_PERIOD]), Integer.parseInt(properties[TREE_HEALTH]), imageStore.getImageList(TREE_KEY));
+            Plant entity = createTree(id, pt, Double.parseDouble(properties[TREE_ACTION_PERIOD]), Double.parseDouble(properties[TREE_ANIMATION_PERIOD]), Integer.parseInt(properties[TREE_HEALTH]), imageStore.getImageList(TREE_KEY));
             world.tryAddEntity(entity);
         }else{
             throw new IllegalArgumentException(String.format("%s requires %d properties when parsing", Functions.TREE_KEY, TREE_NUM_PROPERTIES));
@@ -134,7 +125,7 @@ public final class Functions {
     }
     public static void parseStump(WorldModel world, String[] properties, Point pt, String id, ImageStore imageStore) {
         if (properties.length == STUMP_NUM_PROPERTIES) {
-            Stump entity = createStump(id, pt, imageStore.getImageList(STUMP_KEY));
+            Plant entity = createStump(id, pt, imageStore.getImageList(STUMP_KEY));
             world.tryAddEntity(entity);
         }else{
             throw new IllegalArgumentException(String.format("%s requires %d properties when parsing", STUMP_KEY, STUMP_NUM_PROPERTIES));
@@ -177,39 +168,34 @@ public final class Functions {
         return new Activity(entity, world, imageStore);
     }
 
-    public static House createHouse(String id, Point position,  List<PImage> images) {
+    public static House createHouse(String id, Point position,  List<Sprite> images) {
         return new House(id, position, images);
     }
 
-    public static Obstacle createObstacle(String id, Point position, double animationPeriod, List<PImage> images) {
+    public static Obstacle createObstacle(String id, Point position, double animationPeriod, List<Sprite> images) {
         return new Obstacle(id, position, images, animationPeriod);
     }
 
-    public static Tree createTree(String id, Point position, double actionPeriod, double animationPeriod, int health, List<PImage> images) {
-        return new Tree(id, position, images, actionPeriod, animationPeriod, health);
+    public static Plant createTree(String id, Point position, double actionPeriod, double animationPeriod, int health, List<Sprite> images) {
+        return new Plant(EntityKind.TREE, id, position, images, health, actionPeriod, animationPeriod, 0);
     }
 
-    public static Stump createStump(String id, Point position, List<PImage> images) {
-        return new Stump(id, position, images);
+    public static Plant createStump(String id, Point position, List<Sprite> images) {
+        return new Plant(EntityKind.STUMP, id, position, images, 0, 0, 0, 0);
     }
 
     // health starts at 0 and builds up until ready to convert to Tree
-    public static Sapling createSapling(String id, Point position, List<PImage> images, int health) {
-        return new Sapling(id, position, images, health, SAPLING_ACTION_ANIMATION_PERIOD, SAPLING_ACTION_ANIMATION_PERIOD, SAPLING_HEALTH_LIMIT);
+    public static Plant createSapling(String id, Point position, List<Sprite> images, int health) {
+        return new Plant(EntityKind.SAPLING, id, position, images, health, Plant.SAPLING_ACTION_ANIMATION_PERIOD, Plant.SAPLING_ACTION_ANIMATION_PERIOD, Plant.SAPLING_HEALTH_LIMIT);
     }
 
-    public static Fairy createFairy(String id, Point position, double actionPeriod, double animationPeriod, List<PImage> images) {
+    public static Fairy createFairy(String id, Point position, double actionPeriod, double animationPeriod, List<Sprite> images) {
         return new Fairy(id, position, images, actionPeriod, animationPeriod);
     }
 
     // need resource count, though it always starts at 0
-    public static Dude_Not_Full createDudeNotFull(String id, Point position, double actionPeriod, double animationPeriod, int resourceLimit, List<PImage> images) {
-        return new Dude_Not_Full(id, position, images, resourceLimit, 0, actionPeriod, animationPeriod);
-    }
-
-    // don't technically need resource count ... full
-    public static Dude_Full createDudeFull(String id, Point position, double actionPeriod, double animationPeriod, int resourceLimit, List<PImage> images) {
-        return new Dude_Full(id, position, images, resourceLimit, actionPeriod, animationPeriod, 0);
+    public static Dude createDudeNotFull(String id, Point position, double actionPeriod, double animationPeriod, int resourceLimit, List<Sprite> images) {
+        return new Dude(id, position, images, false, resourceLimit, 0, actionPeriod, animationPeriod);
     }
 
     public static void parseEntity(WorldModel world, String line, ImageStore imageStore) {
@@ -240,48 +226,25 @@ public final class Functions {
         return Math.min(high, Math.max(value, low));
     }
 
-    public static void processImageLine(Map<String, List<PImage>> images, String line, PApplet screen) {
+    public static void processImageLine(ImageStore imageStore, String line) {
         String[] attrs = line.split("\\s");
         if (attrs.length >= 2) {
             String key = attrs[0];
-            PImage img = screen.loadImage(attrs[1]);
-            if (img != null && img.width != -1) {
-                List<PImage> imgs = getImages(images, key);
-                imgs.add(img);
-
-                if (attrs.length >= KEYED_IMAGE_MIN) {
-                    int r = Integer.parseInt(attrs[KEYED_RED_IDX]);
-                    int g = Integer.parseInt(attrs[KEYED_GREEN_IDX]);
-                    int b = Integer.parseInt(attrs[KEYED_BLUE_IDX]);
-                    setAlpha(img, screen.color(r, g, b), 0);
-                }
-            }
-        }
-    }
-    public static List<PImage> getImages(Map<String, List<PImage>> images, String key) {
-        return images.computeIfAbsent(key, k -> new LinkedList<>());
-    }
-    /*
-      Called with color for which alpha should be set and alpha value.
-      setAlpha(img, color(255, 255, 255), 0));
-    */
-    public static void setAlpha(PImage img, int maskColor, int alpha) {
-        int alphaValue = alpha << 24;
-        int nonAlpha = maskColor & COLOR_MASK;
-        img.format = PApplet.ARGB;
-        img.loadPixels();
-        for (int i = 0; i < img.pixels.length; i++) {
-            if ((img.pixels[i] & COLOR_MASK) == nonAlpha) {
-                img.pixels[i] = alphaValue | nonAlpha;
+            Integer maskColor = null;
+            if (attrs.length >= KEYED_IMAGE_MIN) {
+                int r = Integer.parseInt(attrs[KEYED_RED_IDX]);
+                int g = Integer.parseInt(attrs[KEYED_GREEN_IDX]);
+                int b = Integer.parseInt(attrs[KEYED_BLUE_IDX]);
+                maskColor = OPAQUE | r << 16 | g << 8 | b;
             }
+            imageStore.addImage(key, attrs[1], maskColor);
         }
-        img.updatePixels();
     }
-    public static void loadImages(Scanner in, ImageStore imageStore, PApplet screen) {
+    public static void loadImages(Scanner in, ImageStore imageStore) {
         int lineNumber = 0;
         while (in.hasNextLine()) {
             try {
-                processImageLine(imageStore.getImages(), in.nextLine(), screen);
+                processImageLine(imageStore, in.nextLine());
             } catch (NumberFormatException e) {
                 System.out.printf("Image format error on line %d\n", lineNumber);
             }
@@ -0,0 +1,196 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs worlds without drawing them. Nothing here touches Processing or AWT,
+ * so with only the core classes on the class path a run starts as soon as
+ * the save file is parsed.
+ */
+public final class Headless {
+    public static final String IMAGE_LIST_FILE_NAME = "imagelist";
+    public static final String DEFAULT_WORLD_FILE = "world.sav";
+
+    private static final String FLAG_PREFIX = "-";
+    private static final String FAST_FORWARD_FLAG = "-ff=";
+    private static final String FAST_FORWARD_EVENTS_FLAG = "-ffevents=";
+    private static final String SEED_FLAG = "-seed=";
+    private static final String SPECTATE_FLAG = "-spectate=";
+    private static final String RECORD_FLAG = "-record=";
+    private static final String VERIFY_FLAG = "-verify=";
+    private static final String HISTORY_FLAG = "-history=";
+    private static final String DORMANT_FLAG = "-dormant";
+    private static final double HISTORY_INTERVAL = 1.0;
+    private static final int HISTORY_CAPACITY = 100_000;
+    private static final long SPECTATOR_FRAME_MILLIS = 33;
+
+    private Headless() {
+    }
+
+    public static ImageStore loadImageStore() {
+        return ImageStore.load(IMAGE_LIST_FILE_NAME);
+    }
+
+    /**
+     * Runs the world named in args for the given number of simulated seconds
+     * and returns the log of its entities. The world may also be given as
+     * the contents of a save file, which unlike a file name spans several
+     * lines.
+     */
+    public static List<String> run(String[] args, double lifetime) {
+        String world = lastArgument(args);
+        Simulation simulation;
+        if (world.indexOf('\n') >= 0) {
+            simulation = new Simulation(loadImageStore(), world, System.nanoTime());
+        } else {
+            try {
+                simulation = new Simulation(loadImageStore(), Path.of(world), System.nanoTime());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        simulation.advance(lifetime);
+
+        return simulation.log();
+    }
+
+    /*
+       The world is the last argument that is not a flag.
+    */
+    public static Path worldArgument(String[] args) {
+        return Path.of(lastArgument(args));
+    }
+
+    private static String lastArgument(String[] args) {
+        String file = DEFAULT_WORLD_FILE;
+        for (String arg : args) {
+            if (!arg.startsWith(FLAG_PREFIX)) {
+                file = arg;
+            }
+        }
+        return file;
+    }
+
+    /*
+       Usage: Headless [-seed=N] -ff=<seconds> | -ffevents=<count>
+                       [-record=<log> | -verify=<log> | -dormant] [-history=<csv>] [world file]
+       Fast-forwards the world to the given time or event count and prints
+       the throughput. The run can be recorded to an event log, or checked
+       against one recorded with the same world and seed. With -dormant,
+       plants that are only growing leave the scheduler until looked at.
+       With -history the population is sampled every simulated second and
+       written as CSV.
+
+       Usage: Headless [-seed=N] -spectate=<port> [-ff=<seconds>] [world file]
+       Runs the world in real time, for the given simulated seconds or until
+       stopped, and streams it to spectators connecting on the given port.
+    */
+    public static void main(String[] args) {
+        double seconds = 0;
+        long events = 0;
+        long seed = System.nanoTime();
+        int spectatePort = -1;
+        String recordFile = null;
+        String verifyFile = null;
+        String historyFile = null;
+        boolean dormant = false;
+        for (String arg : args) {
+            if (arg.startsWith(SEED_FLAG)) {
+                seed = Long.parseLong(arg.substring(SEED_FLAG.length()));
+            } else if (arg.startsWith(FAST_FORWARD_FLAG)) {
+                seconds = Double.parseDouble(arg.substring(FAST_FORWARD_FLAG.length()));
+            } else if (arg.startsWith(FAST_FORWARD_EVENTS_FLAG)) {
+                events = Long.parseLong(arg.substring(FAST_FORWARD_EVENTS_FLAG.length()));
+            } else if (arg.startsWith(SPECTATE_FLAG)) {
+                spectatePort = Integer.parseInt(arg.substring(SPECTATE_FLAG.length()));
+            } else if (arg.startsWith(RECORD_FLAG)) {
+                recordFile = arg.substring(RECORD_FLAG.length());
+            } else if (arg.startsWith(VERIFY_FLAG)) {
+                verifyFile = arg.substring(VERIFY_FLAG.length());
+            } else if (arg.startsWith(HISTORY_FLAG)) {
+                historyFile = arg.substring(HISTORY_FLAG.length());
+            } else if (arg.equals(DORMANT_FLAG)) {
+                dormant = true;
+            }
+        }
+        if (seconds <= 0 && events <= 0 && spectatePort < 0 || dormant && (recordFile != null || verifyFile != null)) {
+            System.err.println("usage: Headless [" + SEED_FLAG + "N] " + FAST_FORWARD_FLAG + "<seconds> | " + FAST_FORWARD_EVENTS_FLAG + "<count> ["
+                    + RECORD_FLAG + "<log> | " + VERIFY_FLAG + "<log> | " + DORMANT_FLAG + "] [" + HISTORY_FLAG + "<csv>] [world file]");
+            System.err.println("       Headless [" + SEED_FLAG + "N] " + SPECTATE_FLAG + "<port> [" + FAST_FORWARD_FLAG + "<seconds>] [world file]");
+            return;
+        }
+        Simulation simulation;
+        try {
+            simulation = new Simulation(loadImageStore(), worldArgument(args), seed);
+        } catch (IOException e) {
+            System.err.println("cannot read world: " + e.getMessage());
+            return;
+        }
+        System.out.println("Seed " + seed);
+        if (spectatePort >= 0) {
+            try {
+                spectate(simulation, spectatePort, seconds);
+            } catch (IOException | InterruptedException e) {
+                System.err.println(e.getMessage());
+            }
+            return;
+        }
+        if (dormant) {
+            simulation.enableDormancy();
+        }
+        if (historyFile != null) {
+            simulation.enableHistory(HISTORY_INTERVAL, HISTORY_CAPACITY);
+        }
+        FastForward fastForward = new FastForward(simulation.getScheduler(), seconds, events);
+        try {
+            if (recordFile != null) {
+                try (EventRecorder recorder = EventRecorder.recorder(simulation, new BufferedOutputStream(Files.newOutputStream(Path.of(recordFile))))) {
+                    fastForward.runToCompletion();
+                    System.out.println("Recorded " + recorder.getEventsRecorded() + " events to " + recordFile);
+                }
+            } else if (verifyFile != null) {
+                try (InputStream log = Files.newInputStream(Path.of(verifyFile));
+                     EventRecorder verifier = EventRecorder.verifier(simulation, new DataInputStream(new BufferedInputStream(log)))) {
+                    fastForward.runToCompletion();
+                    String divergence = verifier.getDivergence();
+                    System.out.println(divergence == null ? "Run matches " + verifyFile : "Run differs: " + divergence);
+                }
+            } else {
+                fastForward.runToCompletion();
+            }
+            if (historyFile != null) {
+                try (Writer out = Files.newBufferedWriter(Path.of(historyFile))) {
+                    simulation.getHistory().writeCsv(out);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        System.out.println(fastForward.report());
+    }
+
+    /*
+       Simulated time follows wall time, with a frame published to the
+       spectators after each step.
+    */
+    private static void spectate(Simulation simulation, int port, double seconds) throws IOException, InterruptedException {
+        try (SpectatorServer server = new SpectatorServer(simulation.getWorld(), port)) {
+            System.out.println("Streaming on port " + server.getPort());
+            long start = System.nanoTime();
+            while (seconds <= 0 || simulation.getCurrentTime() < seconds) {
+                double wallTime = (System.nanoTime() - start) / 1e9;
+                simulation.advance((seconds > 0 ? Math.min(seconds, wallTime) : wallTime) - simulation.getCurrentTime());
+                server.publishFrame(simulation.getCurrentTime());
+                Thread.sleep(SPECTATOR_FRAME_MILLIS);
+            }
+        }
+    }
+}
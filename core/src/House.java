@@ -1,4 +1,3 @@
-import processing.core.PImage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,8 +9,8 @@ import java.util.Optional;
  * different kinds of entities that exist.
  */
 public final class House extends EntityAb{
-    public House(String id, Point position, List<PImage> images) {
-        super(id, position, images, 0, 0);
+    public House(String id, Point position, List<Sprite> images) {
+        super(EntityKind.HOUSE, id, position, images, 0, 0);
     }
 
     public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
@@ -0,0 +1,80 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * Holds the sprite frames for every image key. Nothing is decoded here, so
+ * the simulation can run without any graphics library; files are only
+ * checked to exist, so that every key has the same number of frames
+ * whether or not a front end ever draws them.
+ */
+public final class ImageStore {
+    private final Map<String, List<Sprite>> images;
+    private final List<Sprite> defaultImages;
+
+    private static final class FileSprite implements Sprite {
+        private final String fileName;
+        private final Integer maskColor;
+
+        private FileSprite(String fileName, Integer maskColor) {
+            this.fileName = fileName;
+            this.maskColor = maskColor;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public Integer getMaskColor() {
+            return maskColor;
+        }
+    }
+
+    public ImageStore() {
+        this.images = new HashMap<>();
+        this.defaultImages = new ArrayList<>();
+        this.defaultImages.add(new FileSprite(null, null));
+    }
+
+    /**
+     * Reads an image list file. A missing list leaves the store empty, so
+     * every key gets the placeholder sprite.
+     */
+    public static ImageStore load(String imageListFile) {
+        ImageStore imageStore = new ImageStore();
+        try {
+            Functions.loadImages(new Scanner(new File(imageListFile)), imageStore);
+        } catch (FileNotFoundException e) {
+            System.err.println(e.getMessage());
+        }
+        return imageStore;
+    }
+
+    public Map<String, List<Sprite>> getImages() {
+        return this.images;
+    }
+
+    public List<Sprite> getImageList(String key) {
+        return this.images.getOrDefault(key, this.defaultImages);
+    }
+
+    public Sprite getDefaultSprite() {
+        return this.defaultImages.get(0);
+    }
+
+    /**
+     * Registers an image file under the given key. Files that do not exist
+     * are dropped, as a front end could not load them either.
+     */
+    public void addImage(String key, String fileName, Integer maskColor) {
+        if (Files.isRegularFile(Path.of(fileName))) {
+            this.images.computeIfAbsent(key, k -> new ArrayList<>()).add(new FileSprite(fileName, maskColor));
+        }
+    }
+}
@@ -1,4 +1,3 @@
-import processing.core.PImage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,8 +10,8 @@ import java.util.Optional;
  */
 public final class Obstacle extends EntityAb implements AnimationEntity{
     private double animationPeriod;
-    public Obstacle(String id, Point position, List<PImage> images, double animationPeriod) {
-        super(id, position, images, 0, 0);
+    public Obstacle(String id, Point position, List<Sprite> images, double animationPeriod) {
+        super(EntityKind.OBSTACLE, id, position, images, 0, 0);
         this.animationPeriod = animationPeriod;
     }
     public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sapling, tree or stump. A sapling grows into a tree or dies back to a
+ * stump, a tree is cut down to a stump, and a fairy turns a stump back into
+ * a sapling. Each change happens in place: the plant keeps its cell, its
+ * place among the world's entities and any animation it has pending.
+ *
+ * In a world with dormancy enabled, a tree with health left or a sapling
+ * still growing goes dormant: until something changes its health, all its
+ * events do is advance its frame and, for a sapling, add health. Those
+ * events are taken off the scheduler, and reading the plant's frame or
+ * health first runs the ones the scheduler has passed by. A dormant
+ * sapling keeps just the activity in which it changes stage scheduled, so
+ * that stage changes still happen in their place among the other events.
+ * The results are the same as with every event run.
+ */
+public final class Plant extends EntityAb implements AnimationEntity, ActivityEntity {
+    // have to be in sync since grows and gains health at same time
+    public static final double SAPLING_ACTION_ANIMATION_PERIOD = 1.000;
+    public static final int SAPLING_HEALTH_LIMIT = 5;
+
+    private static final double TREE_ANIMATION_MAX = 0.600;
+    private static final double TREE_ANIMATION_MIN = 0.050;
+    private static final double TREE_ACTION_MAX = 1.400;
+    static final double TREE_ACTION_MIN = 1.000;
+    private static final int TREE_HEALTH_MAX = 3;
+    private static final int TREE_HEALTH_MIN = 1;
+
+    private double actionPeriod;
+    private double animationPeriod;
+    private int healthLimit;
+
+    /*
+       While dormant, the times of the next animation and activity are kept
+       here instead of on the scheduler, along with what waking needs.
+    */
+    private boolean dormant;
+    private double nextAnimationTime;
+    private double nextActivityTime;
+    private EventScheduler scheduler;
+    private WorldModel world;
+    private ImageStore imageStore;
+
+    public Plant(EntityKind kind, String id, Point position, List<Sprite> images, int health, double actionPeriod, double animationPeriod, int healthLimit) {
+        super(kind, id, position, images, health, 0);
+        this.actionPeriod = actionPeriod;
+        this.animationPeriod = animationPeriod;
+        this.healthLimit = healthLimit;
+    }
+
+    public double getAnimationPeriod() {
+        return this.animationPeriod;
+    }
+
+    public double getActionPeriod() {
+        return this.actionPeriod;
+    }
+
+    public int getHealthLimit() {
+        return this.healthLimit;
+    }
+
+    public boolean isDormant() {
+        return this.dormant;
+    }
+
+    public int getImageIndex() {
+        if (this.dormant) {
+            this.catchUp();
+        }
+        return super.getImageIndex();
+    }
+
+    public int getHealth() {
+        if (this.dormant) {
+            this.catchUp();
+        }
+        return super.getHealth();
+    }
+
+    /*
+       A dude chopping is the only change made to a dormant plant from
+       outside. A sapling's change of stage moves to match its new health;
+       a tree with no health left wakes so that its next activity turns it
+       into a stump.
+    */
+    public void setHealth(int health) {
+        if (!this.dormant) {
+            super.setHealth(health);
+            return;
+        }
+        this.catchUp();
+        super.setHealth(health);
+        if (this.getKind() == EntityKind.SAPLING) {
+            this.scheduler.unscheduleAllEvents(this);
+            this.scheduleStageChange();
+        } else if (health <= 0) {
+            this.wake(true);
+        }
+    }
+
+    /**
+     * The events this plant has pending, in the order they run, including
+     * those held off the scheduler while it is dormant.
+     */
+    public List<Event> getPendingEvents(EventScheduler scheduler) {
+        if (!this.dormant) {
+            return scheduler.getPendingEvents(this);
+        }
+        this.catchUp();
+        List<Event> pending = new ArrayList<>();
+        pending.add(new Event(Functions.createAnimationAction(this, 0), this.nextAnimationTime, this, 0));
+        pending.add(new Event(Functions.createActivityAction(this, this.world, this.imageStore), this.nextActivityTime, this, 0));
+        pending.sort(new EventComparator());
+        return pending;
+    }
+
+    /*
+       A tree's or sapling's animation is left pending when it becomes a
+       stump, and lapses the next time it fires.
+    */
+    public boolean isAnimating() {
+        return this.getKind() != EntityKind.STUMP;
+    }
+
+    /*
+       The animation is scheduled first so that when both are due at once
+       the frame advances before the activity, and a plant that changes
+       stage starts the new stage on its first frame.
+    */
+    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
+        if (this.getKind() != EntityKind.STUMP) {
+            scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.animationPeriod);
+            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+            this.rest(scheduler, world, imageStore);
+        }
+    }
+
+    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
+        if (this.dormant) {
+            this.wake(false);
+        }
+        if (this.getKind() == EntityKind.SAPLING) {
+            this.setHealth(this.getHealth() + 1);
+        }
+        if (this.getHealth() <= 0) {
+            this.becomeStump(world, scheduler, imageStore);
+        } else if (this.getKind() == EntityKind.SAPLING && this.getHealth() >= this.healthLimit) {
+            this.becomeTree(world, scheduler, imageStore);
+            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+        } else {
+            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+        }
+        this.rest(scheduler, world, imageStore);
+    }
+
+    /**
+     * Turns this stump into a new sapling. A stump that still has its old
+     * animation pending keeps it rather than starting a second one.
+     */
+    public void sprout(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        this.change(EntityKind.SAPLING, Functions.SAPLING_KEY, world, scheduler, imageStore);
+        this.setHealth(0);
+        this.actionPeriod = SAPLING_ACTION_ANIMATION_PERIOD;
+        this.animationPeriod = SAPLING_ACTION_ANIMATION_PERIOD;
+        this.healthLimit = SAPLING_HEALTH_LIMIT;
+        if (scheduler.hasPendingEvents(this)) {
+            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
+        } else {
+            this.scheduleActions(scheduler, world, imageStore);
+        }
+        this.rest(scheduler, world, imageStore);
+    }
+
+    /**
+     * Makes this plant dormant if dormancy is enabled and its next activity
+     * will do nothing but reschedule itself and add health.
+     */
+    void rest(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
+        if (this.dormant || !world.isDormancyEnabled() || !this.isNextActivityQuiet()) {
+            return;
+        }
+        List<Event> pending = scheduler.getPendingEvents(this);
+        if (pending.size() != 2 || pending.get(0).getAction() instanceof Animation == pending.get(1).getAction() instanceof Animation) {
+            return;
+        }
+        for (Event event : pending) {
+            if (event.getAction() instanceof Animation) {
+                this.nextAnimationTime = event.getTime();
+            } else {
+                this.nextActivityTime = event.getTime();
+            }
+        }
+        scheduler.unscheduleAllEvents(this);
+        this.dormant = true;
+        this.scheduler = scheduler;
+        this.world = world;
+        this.imageStore = imageStore;
+        if (this.getKind() == EntityKind.SAPLING) {
+            this.scheduleStageChange();
+        }
+    }
+
+    private boolean isNextActivityQuiet() {
+        int health = super.getHealth();
+        if (this.getKind() == EntityKind.TREE) {
+            return health > 0;
+        }
+        return this.getKind() == EntityKind.SAPLING && health + 1 > 0 && health + 1 < this.healthLimit;
+    }
+
+    /**
+     * Takes every event of this plant off the scheduler, including those it
+     * holds while dormant. For a copy of a plant whose events run in
+     * another world.
+     */
+    void unschedule(EventScheduler scheduler) {
+        scheduler.unscheduleAllEvents(this);
+        this.dormant = false;
+    }
+
+    /*
+       Runs the animations and quiet activities that the scheduler has
+       passed by. Times are summed one period at a time, exactly as
+       rescheduling sums them, so they match to the last bit.
+    */
+    private void catchUp() {
+        long animationRank = Event.rankOf(this, true);
+        while (this.scheduler.hasRun(this.nextAnimationTime, animationRank)) {
+            super.setImageIndex(super.getImageIndex() + 1);
+            this.nextAnimationTime += this.animationPeriod;
+        }
+        long activityRank = Event.rankOf(this, false);
+        while (this.isNextActivityQuiet() && this.scheduler.hasRun(this.nextActivityTime, activityRank)) {
+            if (this.getKind() == EntityKind.SAPLING) {
+                super.setHealth(super.getHealth() + 1);
+            }
+            this.nextActivityTime += this.actionPeriod;
+        }
+    }
+
+    /*
+       Schedules the activity in which a dormant sapling becomes a tree or
+       a stump, after the quiet ones it has left.
+    */
+    private void scheduleStageChange() {
+        double time = this.nextActivityTime;
+        for (int health = super.getHealth(); health + 1 > 0 && health + 1 < this.healthLimit; health++) {
+            time += this.actionPeriod;
+        }
+        this.scheduler.scheduleEventAt(this, Functions.createActivityAction(this, this.world, this.imageStore), time);
+    }
+
+    /*
+       Puts the animation back on the scheduler, and the activity too unless
+       it is the one now running.
+    */
+    private void wake(boolean withActivity) {
+        this.catchUp();
+        this.dormant = false;
+        this.scheduler.scheduleEventAt(this, Functions.createAnimationAction(this, 0), this.nextAnimationTime);
+        if (withActivity) {
+            this.scheduler.scheduleEventAt(this, Functions.createActivityAction(this, this.world, this.imageStore), this.nextActivityTime);
+        }
+    }
+
+    private void becomeTree(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        this.change(EntityKind.TREE, Functions.TREE_KEY, world, scheduler, imageStore);
+        WorldRandom random = world.randomFor(this, scheduler.getCurrentTime());
+        this.actionPeriod = Functions.getNumFromRange(random, TREE_ACTION_MAX, TREE_ACTION_MIN);
+        this.animationPeriod = Functions.getNumFromRange(random, TREE_ANIMATION_MAX, TREE_ANIMATION_MIN);
+        this.setHealth(Functions.getIntFromRange(random, TREE_HEALTH_MAX, TREE_HEALTH_MIN));
+    }
+
+    private void becomeStump(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        this.change(EntityKind.STUMP, Functions.STUMP_KEY, world, scheduler, imageStore);
+        this.setHealth(0);
+    }
+
+    /*
+       Each stage takes the previous id with the new stage's key in front,
+       as a replacement entity used to. Agents waiting for the new kind are
+       woken.
+    */
+    private void change(EntityKind kind, String key, WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
+        EntityKind from = this.getKind();
+        this.setKind(kind);
+        this.setId(key + "_" + this.getId());
+        this.setImages(imageStore.getImageList(key));
+        this.setImageIndex(0);
+        Profiling.transformed(this, from);
+        world.transformed(scheduler, this, from);
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A time series of a world's PopulationStats, sampled every interval
+ * simulated seconds into a ring buffer that keeps the latest capacity
+ * samples. A sample only copies the counters, so long runs can be
+ * watched at a fine interval for almost nothing.
+ *
+ * Samples are taken as the scheduler reaches each sample time, just before
+ * the first event due at or after it, so a sample shows the world as it
+ * stood at its time.
+ */
+public final class PopulationHistory implements SchedulerListener {
+    private static final EntityKind[] KINDS = EntityKind.values();
+
+    private final PopulationStats stats;
+    private final double interval;
+    private final int capacity;
+    private final double[] times;
+    private final int[] counts;
+    private final long[] resourceLoads;
+    private int next;
+    private int size;
+    private double nextSampleTime;
+
+    public PopulationHistory(WorldModel world, EventScheduler scheduler, double interval, int capacity) {
+        if (interval <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("interval and capacity must be positive");
+        }
+        this.stats = world.getStats();
+        this.interval = interval;
+        this.capacity = capacity;
+        this.times = new double[capacity];
+        this.counts = new int[capacity * KINDS.length];
+        this.resourceLoads = new long[capacity];
+        sample(scheduler.getCurrentTime());
+        this.nextSampleTime = scheduler.getCurrentTime() + interval;
+        scheduler.addListener(this);
+    }
+
+    public void eventStarting(Event event) {
+        while (event.getTime() >= nextSampleTime) {
+            sample(nextSampleTime);
+            nextSampleTime += interval;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The time of the i-th sample kept, oldest first.
+     */
+    public double getTime(int i) {
+        return times[index(i)];
+    }
+
+    public int getCount(int i, EntityKind kind) {
+        return counts[index(i) * KINDS.length + kind.ordinal()];
+    }
+
+    public long getResourceLoad(int i) {
+        return resourceLoads[index(i)];
+    }
+
+    public void sample(double time) {
+        times[next] = time;
+        for (EntityKind kind : KINDS) {
+            counts[next * KINDS.length + kind.ordinal()] = stats.count(kind);
+        }
+        resourceLoads[next] = stats.getResourceLoad();
+        next = (next + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+    }
+
+    /**
+     * Writes the samples kept as CSV, one row per sample, oldest first.
+     */
+    public void writeCsv(Writer out) throws IOException {
+        StringBuilder header = new StringBuilder("time");
+        for (EntityKind kind : KINDS) {
+            header.append(',').append(kind.name().toLowerCase());
+        }
+        out.write(header.append(",resource_load\n").toString());
+        for (int i = 0; i < size; i++) {
+            StringBuilder row = new StringBuilder(String.format("%.3f", getTime(i)));
+            for (EntityKind kind : KINDS) {
+                row.append(',').append(getCount(i, kind));
+            }
+            out.write(row.append(',').append(getResourceLoad(i)).append('\n').toString());
+        }
+    }
+
+    private int index(int i) {
+        return (next - size + i + capacity) % capacity;
+    }
+}
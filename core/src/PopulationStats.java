@@ -0,0 +1,96 @@
+/**
+ * Counts of the entities in a world by kind, overall and for each square
+ * chunk of cells, along with the wood carried by all dudes. WorldModel
+ * keeps these up to date as entities are added, removed, moved and
+ * transformed, so reading them never scans the world.
+ */
+public final class PopulationStats {
+    public static final int CHUNK_SIZE = 16;
+
+    private static final int KINDS = EntityKind.values().length;
+
+    private final int chunkRows;
+    private final int chunkCols;
+    private final int[] counts = new int[KINDS];
+    private final int[] chunkCounts;
+    private int total;
+    private long resourceLoad;
+
+    public PopulationStats(int numRows, int numCols) {
+        this.chunkRows = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkCols = (numCols + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunkCounts = new int[chunkRows * chunkCols * KINDS];
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    public int getChunkCols() {
+        return chunkCols;
+    }
+
+    public int count(EntityKind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * The number of entities of the given kind in the chunk holding cells
+     * chunkRow * CHUNK_SIZE onwards and chunkCol * CHUNK_SIZE onwards.
+     */
+    public int count(int chunkRow, int chunkCol, EntityKind kind) {
+        return chunkCounts[(chunkRow * chunkCols + chunkCol) * KINDS + kind.ordinal()];
+    }
+
+    /**
+     * The wood carried by all dudes in the world.
+     */
+    public long getResourceLoad() {
+        return resourceLoad;
+    }
+
+    void added(Entity entity, Point pos) {
+        adjust(entity.getKind(), pos, 1);
+        total++;
+        if (entity instanceof Dude dude) {
+            resourceLoad += dude.getResourceCount();
+        }
+    }
+
+    void removed(Entity entity, Point pos) {
+        adjust(entity.getKind(), pos, -1);
+        total--;
+        if (entity instanceof Dude dude) {
+            resourceLoad -= dude.getResourceCount();
+        }
+    }
+
+    void moved(Entity entity, Point from, Point to) {
+        if (from.x / CHUNK_SIZE != to.x / CHUNK_SIZE || from.y / CHUNK_SIZE != to.y / CHUNK_SIZE) {
+            chunkCounts[chunk(from) + entity.getKind().ordinal()]--;
+            chunkCounts[chunk(to) + entity.getKind().ordinal()]++;
+        }
+    }
+
+    void transformed(Entity entity, EntityKind from) {
+        adjust(from, entity.getPosition(), -1);
+        adjust(entity.getKind(), entity.getPosition(), 1);
+    }
+
+    void resourcesChanged(int delta) {
+        resourceLoad += delta;
+    }
+
+    private void adjust(EntityKind kind, Point pos, int delta) {
+        counts[kind.ordinal()] += delta;
+        chunkCounts[chunk(pos) + kind.ordinal()] += delta;
+    }
+
+    private int chunk(Point pos) {
+        return ((pos.y / CHUNK_SIZE) * chunkCols + pos.x / CHUNK_SIZE) * KINDS;
+    }
+}
@@ -0,0 +1,22 @@
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Entry points for the flight recorder events. Loading an event class
+ * starts up part of the flight recorder, which costs a few hundred
+ * milliseconds, so nothing touches them until a recording has started,
+ * either from the command line or later through jcmd.
+ */
+final class Profiling {
+    private Profiling() {
+    }
+
+    static boolean isActive() {
+        return FlightRecorder.isInitialized();
+    }
+
+    static void transformed(Entity entity, EntityKind from) {
+        if (isActive()) {
+            TransformEvent.emit(entity, from);
+        }
+    }
+}
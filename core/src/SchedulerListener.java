@@ -0,0 +1,10 @@
+/**
+ * Receives notifications about the events an EventScheduler runs.
+ */
+public interface SchedulerListener {
+    default void eventStarting(Event event) {
+    }
+
+    default void eventRun(Event event) {
+    }
+}
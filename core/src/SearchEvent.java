@@ -0,0 +1,51 @@
+import java.util.List;
+import java.util.StringJoiner;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one nearest-entity search, timed from start
+ * to finish. Disabled by default.
+ */
+@Name("forest.Search")
+@Label("Nearest Entity Search")
+@Category("Forest Simulation")
+@Description("A WorldModel.findNearest query")
+@Enabled(false)
+final class SearchEvent extends jdk.jfr.Event {
+    @Label("Kinds")
+    String kinds;
+
+    @Label("Candidates")
+    @Description("Entities of the wanted kinds that were compared")
+    int candidates;
+
+    @Label("Found")
+    boolean found;
+
+    @Label("Column")
+    int x;
+
+    @Label("Row")
+    int y;
+
+    /*
+       Kept out of line so the search itself stays small enough to inline.
+    */
+    void commit(List<EntityKind> kinds, int candidates, boolean found, Point pos) {
+        StringJoiner names = new StringJoiner(",");
+        for (EntityKind kind : kinds) {
+            names.add(kind.name());
+        }
+        this.kinds = names.toString();
+        this.candidates = candidates;
+        this.found = found;
+        this.x = pos.x;
+        this.y = pos.y;
+        commit();
+    }
+}
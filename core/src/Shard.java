@@ -0,0 +1,674 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * One rectangular region of a world, simulated with its own WorldModel and
+ * EventScheduler. A shard holds only its region and a halo of HALO cells
+ * around it, and talks only to its neighbours: the shards whose regions
+ * the halo reaches into. Entities in the halo appear as ghosts, copies
+ * with no events of their own that block moves and can be found by
+ * searches.
+ *
+ * Shards run in windows no longer than the shortest action period of any
+ * agent, so each agent acts at most once in a window. A shard starts a
+ * window as soon as its neighbours have finished the one before: it runs
+ * up to the time they have reached plus that period, and waits on no
+ * other shard, so shards far apart can be some windows apart. What an
+ * agent did to a ghost during the window, and any step it tried to take
+ * into a neighbour's region, is then sent to the owner. The owner settles
+ * them and answers with the moves it let in and the changes to what the
+ * neighbour sees of it.
+ *
+ * This is close to a single simulation but not the same. An agent sees
+ * its halo as it stood when the window began, and looks no further than
+ * the halo for a target. Chops and sprouts of a neighbour's plants take
+ * effect at the end of the window, and a step into a neighbour's region
+ * fails if the owner has put something else in the cell by then. With a
+ * single shard there are no neighbours, and the run is exactly that of a
+ * single simulation.
+ */
+public final class Shard implements ShardBoundary, WorldListener, SchedulerListener {
+    /**
+     * How many cells beyond its region a shard sees.
+     */
+    public static final int HALO = 8;
+
+    private static final int DAMAGE = 0;
+    private static final int SPROUT = 1;
+    private static final int MOVE = 2;
+    private static final int REMOVE = 3;
+    private static final int PUT = 4;
+    private static final int END = 5;
+
+    /*
+       A ghost as it was installed, so that what local agents did to it can
+       be found and undone.
+    */
+    private static final class Ghost {
+        private final EntityAb entity;
+        private final EntityKind kind;
+        private final int health;
+        private final byte[] state;
+
+        private Ghost(EntityAb entity, byte[] state) {
+            this.entity = entity;
+            this.kind = entity.getKind();
+            this.health = entity.getHealth();
+            this.state = state;
+        }
+    }
+
+    /*
+       What the neighbours were last sent about an owned cell they see.
+    */
+    private static final class Published {
+        private final EntityAb entity;
+        private final EntityKind kind;
+        private final String id;
+        private final int health;
+
+        private Published(EntityAb entity) {
+            this.entity = entity;
+            this.kind = entity.getKind();
+            this.id = entity.getId();
+            this.health = entity.getHealth();
+        }
+
+        private boolean matches(EntityAb other) {
+            return other == entity && other.getKind() == kind && other.getId().equals(id) && other.getHealth() == health;
+        }
+    }
+
+    /*
+       A step an agent tried to take into a neighbour's region, with what
+       it saw in the cell. The shard is the owner of the cell on the side
+       that asks, and the shard asking on the owner's side.
+    */
+    private static final class Request {
+        private final int shard;
+        private final double time;
+        private final long rank;
+        private final Point pos;
+        private final long occupant;
+        private final int occupantKind;
+        private final byte[] agent;
+
+        private Request(int shard, double time, long rank, Point pos, long occupant, int occupantKind, byte[] agent) {
+            this.shard = shard;
+            this.time = time;
+            this.rank = rank;
+            this.pos = pos;
+            this.occupant = occupant;
+            this.occupantKind = occupantKind;
+            this.agent = agent;
+        }
+    }
+
+    private static final Comparator<Request> REQUEST_ORDER = Comparator.<Request>comparingDouble(r -> r.time).thenComparingLong(r -> r.rank);
+
+    private final int index;
+    private final ShardPlan plan;
+    private final ImageStore imageStore;
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final List<Integer> neighbours;
+    private final int left;
+    private final int right;
+    private final int top;
+    private final int bottom;
+    private final int heldLeft;
+    private final int heldTop;
+    private final int heldCols;
+    private final Ghost[] ghosts;
+    private final List<Point> edge = new ArrayList<>();
+    private final Published[] published;
+    private final Set<EntityAb> touched = new LinkedHashSet<>();
+    private final Set<Plant> sprouted = new LinkedHashSet<>();
+    private final Map<EntityAb, Request> requests = new LinkedHashMap<>();
+    private final Map<Long, EntityAb> sent = new HashMap<>();
+    private final List<Long> cpuNanos = new ArrayList<>();
+    private double lookahead;
+    private long lastCpu;
+    private long migrationsIn;
+
+    /**
+     * Loads this shard's region and halo from the save, keeps the entities
+     * in the region and schedules them in the order a single simulation
+     * would. Every shard of a world must be given the same seed.
+     */
+    public Shard(int index, ShardPlan plan, ImageStore imageStore, String save, long seed) {
+        this.lastCpu = cpuTime();
+        this.index = index;
+        this.plan = plan;
+        this.imageStore = imageStore;
+        this.left = plan.getLeft(index);
+        this.right = plan.getRight(index);
+        this.top = plan.getTop(index);
+        this.bottom = plan.getBottom(index);
+        this.world = new WorldModel(seed, left - HALO, top - HALO, right + HALO, bottom + HALO);
+        this.world.load(new Scanner(save), imageStore, Simulation.createDefaultBackground(imageStore));
+        this.world.enableDormancy();
+        this.heldLeft = Math.max(0, left - HALO);
+        this.heldTop = Math.max(0, top - HALO);
+        this.heldCols = Math.min(world.getNumCols(), right + HALO) - heldLeft;
+        this.ghosts = new Ghost[heldCols * (Math.min(world.getNumRows(), bottom + HALO) - heldTop)];
+        this.neighbours = plan.getNeighbours(index, HALO);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                Point pos = new Point(x, y);
+                if (neighbours.stream().anyMatch(neighbour -> seenBy(neighbour, pos))) {
+                    edge.add(pos);
+                }
+            }
+        }
+        this.published = new Published[edge.size()];
+
+        for (EntityAb entity : new ArrayList<>(world.getEntities())) {
+            if (!owns(entity.getPosition())) {
+                world.removeEntityAt(entity.getPosition());
+            }
+        }
+        this.lookahead = lookahead(world);
+        this.scheduler = new EventScheduler();
+        for (EntityAb entity : world.getEntities()) {
+            entity.scheduleActions(scheduler, world, imageStore);
+        }
+        if (!neighbours.isEmpty()) {
+            world.setBoundary(this);
+            world.addListener(this);
+            scheduler.addListener(this);
+        }
+    }
+
+    /**
+     * The longest window that lets each agent in the world act at most
+     * once: the shortest action period of any dude or fairy, or infinity
+     * if there are none.
+     */
+    public static double lookahead(WorldModel world) {
+        double lookahead = Double.POSITIVE_INFINITY;
+        for (EntityAb entity : world.getEntities()) {
+            if (entity instanceof Dude dude) {
+                lookahead = Math.min(lookahead, dude.getActionPeriod());
+            } else if (entity instanceof Fairy fairy) {
+                lookahead = Math.min(lookahead, fairy.getActionPeriod());
+            }
+        }
+        return lookahead;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * The length of a window, once the run has started; before then, the
+     * lookahead of this shard's own agents only.
+     */
+    public double getLookahead() {
+        return lookahead;
+    }
+
+    public WorldModel getWorld() {
+        return world;
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public List<Integer> getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * How many windows the shard has run.
+     */
+    public long getWindows() {
+        return Math.max(0, cpuNanos.size() - 1);
+    }
+
+    /**
+     * The CPU time this shard's thread took to load and start, and then to
+     * run and settle each window, in nanoseconds.
+     */
+    public long[] getCpuNanos() {
+        return cpuNanos.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    public long getMigrationsIn() {
+        return migrationsIn;
+    }
+
+    public boolean owns(Point pos) {
+        return pos.x >= left && pos.x < right && pos.y >= top && pos.y < bottom;
+    }
+
+    /*
+       The agent stays put for the rest of the window; the owner of the
+       cell decides at the end whether it arrives there.
+    */
+    public void requestMove(Entity entity, Point pos) {
+        Entity occupant = world.isOccupied(pos) ? world.getOccupancyCell(pos) : null;
+        requests.put((EntityAb) entity, new Request(plan.shardAt(pos), scheduler.getCurrentTime(), Event.rankOf(entity, false), pos,
+                occupant == null ? -1 : occupant.getSerial(), occupant == null ? -1 : occupant.getKind().ordinal(), null));
+    }
+
+    /**
+     * Runs the shard from the start to the given time, one window at a
+     * time. Every shard of the world must run with the same lifetime, so
+     * that they all run the same windows.
+     */
+    public void run(double lifetime, ShardLink link) throws IOException {
+        start(link);
+        for (int window = 1; ; window++) {
+            double stopTime = window * lookahead;
+            if (stopTime > lifetime) {
+                scheduler.advanceTo(lifetime, Long.MAX_VALUE);
+                endWindow(link);
+                return;
+            }
+            scheduler.advanceBefore(stopTime, Long.MIN_VALUE, Long.MAX_VALUE);
+            endWindow(link);
+        }
+    }
+
+    /*
+       The shards agree on the window length by passing the shortest period
+       they know of to their neighbours, as many times as it takes to cross
+       the grid of shards. Then each sends its neighbours their first view
+       of it.
+    */
+    private void start(ShardLink link) throws IOException {
+        if (!neighbours.isEmpty()) {
+            for (int i = 0; i < plan.getShardRows() + plan.getShardCols(); i++) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                new DataOutputStream(bytes).writeDouble(lookahead);
+                byte[][] incoming = link.exchange(toNeighbours(bytes.toByteArray()));
+                for (int neighbour : neighbours) {
+                    lookahead = Math.min(lookahead, new DataInputStream(new ByteArrayInputStream(incoming[neighbour])).readDouble());
+                }
+            }
+            applyReplies(link.exchange(encodeReplies(Map.of())));
+        }
+        if (!(lookahead > 0)) {
+            throw new IllegalArgumentException("cannot shard a world with an action period of " + lookahead);
+        }
+        recordCpu();
+    }
+
+    /*
+       Two exchanges with the neighbours: first what this shard's agents
+       did to theirs and where they tried to go, then the owners' answers.
+    */
+    private void endWindow(ShardLink link) throws IOException {
+        if (!neighbours.isEmpty()) {
+            applyReplies(link.exchange(settle(link.exchange(encodeRequests()))));
+        }
+        recordCpu();
+    }
+
+    /**
+     * The log lines of the entities this shard owns, by serial. Merged in
+     * order of serial, the logs of all shards list entities in the order a
+     * single simulation does.
+     */
+    public Map<Long, String> log() {
+        Map<Long, String> log = new TreeMap<>();
+        for (EntityAb entity : world.getEntities()) {
+            if (owns(entity.getPosition())) {
+                String line = entity.log();
+                if (line != null) {
+                    log.put(entity.getSerial(), line);
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Counts the entities this shard owns by kind.
+     */
+    public int[] countKinds() {
+        int[] counts = new int[EntityKind.values().length];
+        for (EntityAb entity : world.getEntities()) {
+            if (owns(entity.getPosition())) {
+                counts[entity.getKind().ordinal()]++;
+            }
+        }
+        return counts;
+    }
+
+    /*
+       A ghost stump that a local fairy sprouts is given events; they are
+       taken away again as soon as the fairy's activity is over, since the
+       owner runs the sapling.
+    */
+    public void eventRun(Event event) {
+        for (Plant ghost : sprouted) {
+            ghost.unschedule(scheduler);
+        }
+        sprouted.clear();
+    }
+
+    /*
+       Only chops change an entity in place without moving or transforming
+       it.
+    */
+    public void entityChanged(Entity entity) {
+        if (!owns(entity.getPosition())) {
+            touched.add((EntityAb) entity);
+        }
+    }
+
+    public void entityMoved(Entity entity, Point from) {
+    }
+
+    public void entityTransformed(Entity entity, EntityKind from) {
+        if (!owns(entity.getPosition())) {
+            touched.add((EntityAb) entity);
+            sprouted.add((Plant) entity);
+        }
+    }
+
+    /*
+       Each ghost a local agent changed is reported to its owner and put
+       back as it was; the owner's version comes back with its answer.
+    */
+    private byte[][] encodeRequests() throws IOException {
+        Messages messages = new Messages();
+        for (EntityAb entity : touched) {
+            Ghost ghost = ghosts[cell(entity.getPosition())];
+            DataOutputStream out = messages.to(plan.shardAt(entity.getPosition()));
+            if (entity.getKind() != ghost.kind) {
+                out.writeByte(SPROUT);
+                writePoint(out, entity.getPosition());
+                out.writeLong(entity.getSerial());
+            }
+            if (entity.getHealth() != ghost.health) {
+                out.writeByte(DAMAGE);
+                writePoint(out, entity.getPosition());
+                out.writeLong(entity.getSerial());
+                out.writeInt(ghost.health - entity.getHealth());
+            }
+            installGhost(ghost.state);
+        }
+        touched.clear();
+        for (Map.Entry<EntityAb, Request> entry : requests.entrySet()) {
+            EntityAb agent = entry.getKey();
+            Request request = entry.getValue();
+            if (!world.getEntities().contains(agent)) {
+                continue;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream state = new DataOutputStream(bytes)) {
+                Checkpoint.writeEntityWithEvents(state, agent, scheduler);
+            }
+            DataOutputStream out = messages.to(request.shard);
+            out.writeByte(MOVE);
+            out.writeDouble(request.time);
+            out.writeLong(request.rank);
+            writePoint(out, request.pos);
+            out.writeLong(request.occupant);
+            out.writeInt(request.occupantKind);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            sent.put(agent.getSerial(), agent);
+        }
+        requests.clear();
+        return messages.finish();
+    }
+
+    /*
+       Sprouts and chops are made first, in the order the neighbours sent
+       them. Then moves are let in by the time and rank of the activity
+       that asked for them, each only if the cell still holds what the
+       agent saw there; like an ordinary move, it then replaces that.
+    */
+    private byte[][] settle(byte[][] incoming) throws IOException {
+        List<Request> arrivals = new ArrayList<>();
+        for (int source : neighbours) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(incoming[source]));
+            for (int type = in.readByte(); type != END; type = in.readByte()) {
+                if (type == SPROUT) {
+                    EntityAb target = ownedAt(readPoint(in), in.readLong());
+                    if (target != null && target.getKind() == EntityKind.STUMP) {
+                        ((Plant) target).sprout(world, scheduler, imageStore);
+                    }
+                } else if (type == DAMAGE) {
+                    EntityAb target = ownedAt(readPoint(in), in.readLong());
+                    int amount = in.readInt();
+                    if (target != null) {
+                        target.setHealth(target.getHealth() - amount);
+                        world.changed(target);
+                    }
+                } else if (type == MOVE) {
+                    double time = in.readDouble();
+                    long rank = in.readLong();
+                    Point pos = readPoint(in);
+                    long occupant = in.readLong();
+                    int occupantKind = in.readInt();
+                    byte[] agent = new byte[in.readInt()];
+                    in.readFully(agent);
+                    arrivals.add(new Request(source, time, rank, pos, occupant, occupantKind, agent));
+                } else {
+                    throw new IllegalArgumentException("unknown shard message " + type);
+                }
+            }
+        }
+
+        arrivals.sort(REQUEST_ORDER);
+        Map<Integer, List<Long>> accepted = new HashMap<>();
+        for (Request arrival : arrivals) {
+            Entity occupant = world.isOccupied(arrival.pos) ? world.getOccupancyCell(arrival.pos) : null;
+            boolean unchanged = occupant == null ? arrival.occupant < 0
+                    : occupant.getSerial() == arrival.occupant && occupant.getKind().ordinal() == arrival.occupantKind;
+            if (owns(arrival.pos) && unchanged) {
+                if (occupant != null) {
+                    world.removeEntity(scheduler, occupant);
+                }
+                EntityAb migrant = Checkpoint.readEntityWithEvents(new DataInputStream(new ByteArrayInputStream(arrival.agent)), world, scheduler, imageStore, true);
+                migrant.setPosition(arrival.pos);
+                world.addEntity(migrant);
+                migrationsIn++;
+                accepted.computeIfAbsent(arrival.shard, shard -> new ArrayList<>()).add(migrant.getSerial());
+            }
+        }
+        return encodeReplies(accepted);
+    }
+
+    /*
+       Each neighbour is told which of its agents were let in, and then
+       what has changed in the cells of this region it sees. A cell goes to
+       every neighbour that sees it, and only if it changed, so a quiet
+       shard costs its neighbours little.
+    */
+    private byte[][] encodeReplies(Map<Integer, List<Long>> accepted) throws IOException {
+        List<Point> changed = new ArrayList<>();
+        List<byte[]> states = new ArrayList<>();
+        for (int i = 0; i < edge.size(); i++) {
+            Point pos = edge.get(i);
+            Entity entity = world.getOccupancyCell(pos);
+            if (entity == null) {
+                if (published[i] != null) {
+                    changed.add(pos);
+                    states.add(null);
+                    published[i] = null;
+                }
+            } else if (published[i] == null || !published[i].matches((EntityAb) entity)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(bytes)) {
+                    Checkpoint.writeEntity(out, (EntityAb) entity);
+                }
+                changed.add(pos);
+                states.add(bytes.toByteArray());
+                published[i] = new Published((EntityAb) entity);
+            }
+        }
+
+        Messages messages = new Messages();
+        for (int neighbour : neighbours) {
+            DataOutputStream out = messages.to(neighbour);
+            List<Long> serials = accepted.getOrDefault(neighbour, List.of());
+            out.writeInt(serials.size());
+            for (long serial : serials) {
+                out.writeLong(serial);
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                if (!seenBy(neighbour, changed.get(i))) {
+                    continue;
+                }
+                if (states.get(i) == null) {
+                    out.writeByte(REMOVE);
+                    writePoint(out, changed.get(i));
+                } else {
+                    out.writeByte(PUT);
+                    out.writeInt(states.get(i).length);
+                    out.write(states.get(i));
+                }
+            }
+        }
+        return messages.finish();
+    }
+
+    /*
+       Agents let in elsewhere leave this world; each shows up again as a
+       ghost if it is still in the halo. Agents parked waiting for a kind
+       that has appeared in the halo are woken.
+    */
+    private void applyReplies(byte[][] incoming) throws IOException {
+        Set<EntityKind> appeared = EnumSet.noneOf(EntityKind.class);
+        for (int source : neighbours) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(incoming[source]));
+            for (int accepted = in.readInt(); accepted > 0; accepted--) {
+                world.removeEntity(scheduler, sent.get(in.readLong()));
+            }
+            for (int type = in.readByte(); type != END; type = in.readByte()) {
+                if (type == REMOVE) {
+                    removeGhost(cell(readPoint(in)));
+                } else if (type == PUT) {
+                    byte[] state = new byte[in.readInt()];
+                    in.readFully(state);
+                    appeared.add(installGhost(state).getKind());
+                } else {
+                    throw new IllegalArgumentException("unknown shard message " + type);
+                }
+            }
+        }
+        sent.clear();
+        for (EntityKind kind : appeared) {
+            world.wake(scheduler, kind);
+        }
+    }
+
+    private EntityAb installGhost(byte[] state) throws IOException {
+        EntityAb entity = Checkpoint.readEntity(new DataInputStream(new ByteArrayInputStream(state)), imageStore);
+        int cell = cell(entity.getPosition());
+        removeGhost(cell);
+        world.addEntity(entity);
+        ghosts[cell] = new Ghost(entity, state);
+        return entity;
+    }
+
+    private void removeGhost(int cell) {
+        Ghost ghost = ghosts[cell];
+        if (ghost != null) {
+            world.removeEntityAt(ghost.entity.getPosition());
+            ghosts[cell] = null;
+        }
+    }
+
+    private EntityAb ownedAt(Point pos, long serial) {
+        if (!owns(pos)) {
+            return null;
+        }
+        Entity entity = world.getOccupancyCell(pos);
+        return entity != null && entity.getSerial() == serial ? (EntityAb) entity : null;
+    }
+
+    private boolean seenBy(int shard, Point pos) {
+        return pos.x >= plan.getLeft(shard) - HALO && pos.x < plan.getRight(shard) + HALO
+                && pos.y >= plan.getTop(shard) - HALO && pos.y < plan.getBottom(shard) + HALO;
+    }
+
+    private int cell(Point pos) {
+        return (pos.y - heldTop) * heldCols + pos.x - heldLeft;
+    }
+
+    private void recordCpu() {
+        long now = cpuTime();
+        cpuNanos.add(now - lastCpu);
+        lastCpu = now;
+    }
+
+    private static long cpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    private static void writePoint(DataOutputStream out, Point pos) throws IOException {
+        out.writeInt(pos.x);
+        out.writeInt(pos.y);
+    }
+
+    private static Point readPoint(DataInputStream in) throws IOException {
+        return new Point(in.readInt(), in.readInt());
+    }
+
+    private byte[][] toNeighbours(byte[] message) {
+        byte[][] messages = new byte[plan.getShardCount()][];
+        for (int neighbour : neighbours) {
+            messages[neighbour] = message;
+        }
+        return messages;
+    }
+
+    /*
+       One buffer for each neighbour an exchange goes to; the entries for
+       other shards stay null.
+    */
+    private final class Messages {
+        private final ByteArrayOutputStream[] bytes = new ByteArrayOutputStream[plan.getShardCount()];
+        private final DataOutputStream[] outs = new DataOutputStream[plan.getShardCount()];
+
+        private Messages() {
+            for (int neighbour : neighbours) {
+                bytes[neighbour] = new ByteArrayOutputStream();
+                outs[neighbour] = new DataOutputStream(bytes[neighbour]);
+            }
+        }
+
+        private DataOutputStream to(int shard) {
+            if (outs[shard] == null) {
+                throw new IllegalStateException("shard " + index + " has no neighbour " + shard);
+            }
+            return outs[shard];
+        }
+
+        private byte[][] finish() throws IOException {
+            byte[][] messages = new byte[outs.length][];
+            for (int neighbour : neighbours) {
+                outs[neighbour].writeByte(END);
+                outs[neighbour].flush();
+                messages[neighbour] = bytes[neighbour].toByteArray();
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * The edge of a world that simulates one region of a larger grid. Cells
+ * outside the region are owned by other shards, so a move into one is
+ * passed on as a request rather than made directly.
+ */
+public interface ShardBoundary {
+    boolean owns(Point pos);
+
+    void requestMove(Entity entity, Point pos);
+}
@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects shards running as threads in one JVM. Each ordered pair of
+ * shards has a queue of its own, so a shard posts its messages and waits
+ * only for those its neighbours send it, never for the whole grid.
+ */
+public final class ShardHub {
+    private static final int POLL_MILLIS = 100;
+
+    private final int shards;
+    private final List<BlockingQueue<byte[]>> mail = new ArrayList<>();
+    private volatile boolean aborted;
+
+    public ShardHub(int shards) {
+        this.shards = shards;
+        for (int i = 0; i < shards * shards; i++) {
+            this.mail.add(new LinkedBlockingQueue<>());
+        }
+    }
+
+    public ShardLink linkFor(int shard) {
+        return outgoing -> {
+            for (int target = 0; target < this.shards; target++) {
+                if (target != shard && outgoing[target] != null) {
+                    mailbox(shard, target).add(outgoing[target]);
+                }
+            }
+            byte[][] incoming = new byte[this.shards][];
+            for (int source = 0; source < this.shards; source++) {
+                if (source != shard && outgoing[source] != null) {
+                    incoming[source] = take(mailbox(source, shard));
+                }
+            }
+            return incoming;
+        };
+    }
+
+    /**
+     * Releases every shard waiting on an exchange with an IOException. A
+     * shard that fails calls this so the others do not wait forever.
+     */
+    public void abort() {
+        this.aborted = true;
+    }
+
+    private BlockingQueue<byte[]> mailbox(int source, int target) {
+        return this.mail.get(source * this.shards + target);
+    }
+
+    private byte[] take(BlockingQueue<byte[]> mailbox) throws IOException {
+        try {
+            while (true) {
+                byte[] message = mailbox.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (message != null) {
+                    return message;
+                } else if (this.aborted) {
+                    throw new IOException("another shard failed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("shard interrupted");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import java.io.IOException;
+
+/**
+ * A shard's connection to its neighbours.
+ */
+public interface ShardLink {
+    /**
+     * Sends outgoing[i] to each shard i whose entry is not null and
+     * returns, at the same indices, what those shards sent to this one in
+     * their matching call; every other entry is null. Blocks only until
+     * those shards have sent, so the two sides of a link must call
+     * exchange with each other the same number of times.
+     */
+    byte[][] exchange(byte[][] outgoing) throws IOException;
+}
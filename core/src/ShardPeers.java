@@ -0,0 +1,125 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Connects a shard running in its own JVM straight to the JVMs of its
+ * neighbours, over a loopback socket for each pair. A thread for each
+ * socket reads what the neighbour sends as it arrives, so two neighbours
+ * sending to each other at once never wait on each other.
+ */
+public final class ShardPeers implements ShardLink, Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    /* Put in an inbox once its socket has closed. */
+    private static final byte[] CLOSED = new byte[0];
+
+    private final int index;
+    private final List<Socket> sockets = new ArrayList<>();
+    private final DataOutputStream[] outs;
+    private final List<BlockingQueue<byte[]>> inboxes = new ArrayList<>();
+
+    /**
+     * Connects to every neighbour, given the port each shard takes calls
+     * on. A shard calls the neighbours numbered above it, and answers
+     * those below it on its own server socket.
+     */
+    public ShardPeers(int index, List<Integer> neighbours, ServerSocket server, int[] ports) throws IOException {
+        this.index = index;
+        this.outs = new DataOutputStream[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            this.inboxes.add(null);
+        }
+        try {
+            for (int neighbour : neighbours) {
+                if (neighbour > index) {
+                    Socket socket = new Socket(InetAddress.getLoopbackAddress(), ports[neighbour]);
+                    this.sockets.add(socket);
+                    open(neighbour, socket);
+                    this.outs[neighbour].writeInt(index);
+                    this.outs[neighbour].flush();
+                }
+            }
+            server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            for (int neighbour : neighbours) {
+                if (neighbour < index) {
+                    Socket socket = server.accept();
+                    this.sockets.add(socket);
+                    int peer = new DataInputStream(socket.getInputStream()).readInt();
+                    if (!neighbours.contains(peer) || peer >= index || this.outs[peer] != null) {
+                        throw new IOException("unexpected call from shard " + peer);
+                    }
+                    open(peer, socket);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public byte[][] exchange(byte[][] outgoing) throws IOException {
+        for (int target = 0; target < outgoing.length; target++) {
+            if (outgoing[target] != null) {
+                if (this.outs[target] == null) {
+                    throw new IllegalStateException("shard " + this.index + " has no link to shard " + target);
+                }
+                this.outs[target].writeInt(outgoing[target].length);
+                this.outs[target].write(outgoing[target]);
+                this.outs[target].flush();
+            }
+        }
+        byte[][] incoming = new byte[outgoing.length][];
+        for (int source = 0; source < outgoing.length; source++) {
+            if (outgoing[source] != null) {
+                try {
+                    incoming[source] = this.inboxes.get(source).take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("shard interrupted");
+                }
+                if (incoming[source] == CLOSED) {
+                    throw new IOException("shard " + source + " closed its connection");
+                }
+            }
+        }
+        return incoming;
+    }
+
+    public void close() throws IOException {
+        for (Socket socket : this.sockets) {
+            socket.close();
+        }
+    }
+
+    private void open(int peer, Socket socket) throws IOException {
+        this.outs[peer] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        BlockingQueue<byte[]> inbox = new LinkedBlockingQueue<>();
+        this.inboxes.set(peer, inbox);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(() -> {
+            try {
+                while (true) {
+                    byte[] message = new byte[in.readInt()];
+                    in.readFully(message);
+                    inbox.add(message);
+                }
+            } catch (IOException e) {
+                inbox.add(CLOSED);
+            }
+        }, "shard " + this.index + " from " + peer);
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a grid of cells into a grid of rectangular shards of nearly equal
+ * size. Shards are numbered row by row.
+ */
+public final class ShardPlan {
+    private final int numRows;
+    private final int numCols;
+    private final int shardRows;
+    private final int shardCols;
+
+    public ShardPlan(int numRows, int numCols, int shardRows, int shardCols) {
+        if (shardRows < 1 || shardCols < 1 || shardRows > numRows || shardCols > numCols) {
+            throw new IllegalArgumentException(String.format("cannot split %dx%d cells into %dx%d shards", numRows, numCols, shardRows, shardCols));
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.shardRows = shardRows;
+        this.shardCols = shardCols;
+    }
+
+    public int getShardCount() {
+        return shardRows * shardCols;
+    }
+
+    public int getShardRows() {
+        return shardRows;
+    }
+
+    public int getShardCols() {
+        return shardCols;
+    }
+
+    public int shardAt(Point pos) {
+        return (pos.y * shardRows / numRows) * shardCols + pos.x * shardCols / numCols;
+    }
+
+    /**
+     * The first column of the shard.
+     */
+    public int getLeft(int shard) {
+        return ceilDiv((shard % shardCols) * numCols, shardCols);
+    }
+
+    /**
+     * The column just past the shard.
+     */
+    public int getRight(int shard) {
+        return ceilDiv((shard % shardCols + 1) * numCols, shardCols);
+    }
+
+    public int getTop(int shard) {
+        return ceilDiv((shard / shardCols) * numRows, shardRows);
+    }
+
+    public int getBottom(int shard) {
+        return ceilDiv((shard / shardCols + 1) * numRows, shardRows);
+    }
+
+    /**
+     * The other shards with cells no more than halo cells away from this
+     * one's region, in order. If a shard is another's neighbour, the
+     * other is its neighbour too.
+     */
+    public List<Integer> getNeighbours(int shard, int halo) {
+        List<Integer> neighbours = new ArrayList<>();
+        for (int other = 0; other < getShardCount(); other++) {
+            if (other != shard
+                    && getLeft(other) < getRight(shard) + halo && getRight(other) > getLeft(shard) - halo
+                    && getTop(other) < getBottom(shard) + halo && getBottom(other) > getTop(shard) - halo) {
+                neighbours.add(other);
+            }
+        }
+        return neighbours;
+    }
+
+    /*
+       The inverse of the floor division in shardAt: the smallest cell that
+       maps to shard index i is the ceiling of i * cells / shards.
+    */
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
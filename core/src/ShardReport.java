@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares sharded runs of a world against a plain Simulation with the same
+ * seed, and reports how the time taken scales with the number of shards.
+ * The plain run lets plants go dormant, as shards do, so that both do the
+ * same work.
+ *
+ * Wall times are measured, so they only show what running shards in
+ * parallel gains on a machine with a core to spare for each shard. The
+ * estimated time is a model instead: the longest chain of windows the
+ * shards' measured CPU times allow (see ShardedSimulation.Result). It says
+ * what the same run could reach given enough cores, on any machine, but it
+ * leaves out the cost of passing messages and of cores contending. The
+ * estimated speedup compares it with the single run's CPU time; the
+ * parallelism compares it with the shards' own CPU time, and so leaves out
+ * the work a shard saves by holding fewer entities.
+ */
+public final class ShardReport {
+    private ShardReport() {
+    }
+
+    /*
+       Usage: ShardReport <world> <lifetime> <seed> [layouts] [-processes]
+       Layouts are given as rows x columns of shards, e.g. 1x1,1x2,2x2 (the
+       default). With -processes every layout is also run with one JVM per
+       shard.
+    */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: ShardReport <world> <lifetime> <seed> [layouts] [-processes]");
+            return;
+        }
+        String world = args[0];
+        double lifetime = Double.parseDouble(args[1]);
+        long seed = Long.parseLong(args[2]);
+        String layouts = "1x1,1x2,2x2";
+        boolean processes = false;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].equals("-processes")) {
+                processes = true;
+            } else {
+                layouts = args[i];
+            }
+        }
+
+        ImageStore imageStore = Headless.loadImageStore();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = System.nanoTime();
+        long startCpu = threads.getCurrentThreadCpuTime();
+        Simulation reference = new Simulation(imageStore, Path.of(world), seed);
+        reference.enableDormancy();
+        reference.advance(lifetime);
+        double referenceSeconds = (System.nanoTime() - start) / 1e9;
+        double referenceCpuSeconds = (threads.getCurrentThreadCpuTime() - startCpu) / 1e9;
+        List<String> referenceLog = reference.log();
+        int[] referenceCounts = new int[EntityKind.values().length];
+        for (EntityAb entity : reference.getWorld().getEntities()) {
+            referenceCounts[entity.getKind().ordinal()]++;
+        }
+        System.out.printf("Single simulation: %d events in %.3f s (%.3f s CPU), %d cores available%n",
+                reference.getScheduler().getEventsProcessed(), referenceSeconds, referenceCpuSeconds, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-7s %-9s %10s %9s %8s %9s %9s %9s %9s %8s %10s %9s %8s  %s%n",
+                "shards", "mode", "events", "wall s", "speedup", "cpu s", "est. s", "est. up", "parallel", "windows", "migrations", "same log", "lines", "entities by kind (single run)");
+
+        for (String layout : layouts.split(",")) {
+            String[] size = layout.split("x");
+            List<ShardedSimulation.Mode> modes = new ArrayList<>(List.of(ShardedSimulation.Mode.THREADS));
+            if (processes) {
+                modes.add(ShardedSimulation.Mode.PROCESSES);
+            }
+            for (ShardedSimulation.Mode mode : modes) {
+                ShardedSimulation sharded = new ShardedSimulation(imageStore, Path.of(world), seed, Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+                ShardedSimulation.Result result = sharded.run(lifetime, mode);
+                double estimated = result.getEstimatedParallelSeconds();
+                System.out.printf("%-7s %-9s %10d %9.3f %8.2f %9.3f %9.3f %9.2f %9.2f %8d %10d %9s %7.1f%%  %s%n",
+                        layout, mode.name().toLowerCase(), result.getEvents(), result.getWallSeconds(), referenceSeconds / result.getWallSeconds(),
+                        result.getCpuSeconds(), estimated, referenceCpuSeconds / estimated, result.getCpuSeconds() / estimated,
+                        result.getWindows(), result.getMigrations(), referenceLog.equals(result.getLog()) ? "yes" : "no",
+                        100.0 * sharedLines(referenceLog, result.getLog()) / Math.max(1, referenceLog.size()),
+                        describeCounts(result, referenceCounts));
+            }
+        }
+    }
+
+    /*
+       A line counts if the single run has the same line anywhere, since an
+       entity removed in one run and not the other shifts the rest.
+    */
+    private static int sharedLines(List<String> expected, List<String> actual) {
+        Set<String> lines = new HashSet<>(expected);
+        int shared = 0;
+        for (String line : actual) {
+            if (lines.contains(line)) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private static String describeCounts(ShardedSimulation.Result result, int[] referenceCounts) {
+        StringBuilder sb = new StringBuilder();
+        for (EntityKind kind : EntityKind.values()) {
+            int count = result.getKindCount(kind);
+            int expected = referenceCounts[kind.ordinal()];
+            if (count != 0 || expected != 0) {
+                sb.append(kind.name().toLowerCase()).append(' ').append(count);
+                if (count != expected) {
+                    sb.append(" (").append(expected).append(')');
+                }
+                sb.append("  ");
+            }
+        }
+        return sb.toString().strip();
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs one shard in its own JVM for a ShardedSimulation. The coordinator
+ * starts it and collects its results; the messages of the run itself go
+ * straight to the workers of neighbouring shards.
+ */
+public final class ShardWorker {
+    private ShardWorker() {
+    }
+
+    /*
+       Usage: ShardWorker <port> <index>
+       Connects to the coordinator on the loopback address, names its shard
+       and the port it takes calls from neighbours on, and the coordinator
+       sends the layout, the seed, the lifetime, every shard's port and the
+       save.
+    */
+    public static void main(String[] args) throws IOException {
+        int index = Integer.parseInt(args[1]);
+        try (ServerSocket server = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0]))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(index);
+            out.writeInt(server.getLocalPort());
+            out.flush();
+            int shardRows = in.readInt();
+            int shardCols = in.readInt();
+            long seed = in.readLong();
+            double lifetime = in.readDouble();
+            int[] ports = new int[in.readInt()];
+            for (int i = 0; i < ports.length; i++) {
+                ports[i] = in.readInt();
+            }
+            byte[] save = new byte[in.readInt()];
+            in.readFully(save);
+
+            String text = new String(save, StandardCharsets.UTF_8);
+            ImageStore imageStore = Headless.loadImageStore();
+            ShardPlan plan = new ShardedSimulation(imageStore, text, seed, shardRows, shardCols).getPlan();
+            Shard shard = new Shard(index, plan, imageStore, text, seed);
+            try (ShardPeers peers = new ShardPeers(index, shard.getNeighbours(), server, ports)) {
+                shard.run(lifetime, peers);
+            }
+            ShardedSimulation.Result.write(out, shard);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,432 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one world split into a grid of shards, either as threads in this
+ * JVM or as separate local JVMs that talk to their neighbours over
+ * loopback sockets. Both modes give the same results for the same seed
+ * and layout. With a single shard those are the results of a plain
+ * Simulation; with more, they differ from them in the ways Shard lists.
+ */
+public final class ShardedSimulation {
+    public enum Mode {
+        THREADS,
+        PROCESSES
+    }
+
+    private static final int POLL_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    /**
+     * The merged outcome of every shard.
+     */
+    public static final class Result {
+        private final ShardPlan plan;
+        private final Map<Long, String> log = new TreeMap<>();
+        private final int[] kindCounts = new int[EntityKind.values().length];
+        private final long[][] cpuNanos;
+        private long events;
+        private long windows;
+        private long migrations;
+        private double wallSeconds;
+
+        private Result(ShardPlan plan) {
+            this.plan = plan;
+            this.cpuNanos = new long[plan.getShardCount()][];
+        }
+
+        /**
+         * The log lines of every shard, in the order a single simulation
+         * lists its entities.
+         */
+        public List<String> getLog() {
+            return new ArrayList<>(log.values());
+        }
+
+        public int getKindCount(EntityKind kind) {
+            return kindCounts[kind.ordinal()];
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        /**
+         * How many windows each shard ran. Neighbours exchange messages
+         * twice a window.
+         */
+        public long getWindows() {
+            return windows;
+        }
+
+        public long getMigrations() {
+            return migrations;
+        }
+
+        public double getWallSeconds() {
+            return wallSeconds;
+        }
+
+        /**
+         * The CPU time the shards' threads took between them.
+         */
+        public double getCpuSeconds() {
+            long total = 0;
+            for (long[] shard : cpuNanos) {
+                for (long nanos : shard) {
+                    total += nanos;
+                }
+            }
+            return total / 1e9;
+        }
+
+        /**
+         * An estimate, not a measurement, of the wall time with a core for
+         * every shard and messages that take no time: the longest chain of
+         * windows, each taking the CPU time its shard measured, where a
+         * shard's window ends only once its neighbours have run theirs.
+         */
+        public double getEstimatedParallelSeconds() {
+            double[] finished = new double[cpuNanos.length];
+            for (int window = 0; window < cpuNanos[0].length; window++) {
+                double[] ran = new double[finished.length];
+                for (int shard = 0; shard < ran.length; shard++) {
+                    ran[shard] = finished[shard] + cpuNanos[shard][window] / 1e9;
+                }
+                for (int shard = 0; shard < ran.length; shard++) {
+                    finished[shard] = ran[shard];
+                    for (int neighbour : plan.getNeighbours(shard, Shard.HALO)) {
+                        finished[shard] = Math.max(finished[shard], ran[neighbour]);
+                    }
+                }
+            }
+            return Arrays.stream(finished).max().orElse(0);
+        }
+
+        void add(Shard shard) {
+            log.putAll(shard.log());
+            int[] counts = shard.countKinds();
+            for (int i = 0; i < counts.length; i++) {
+                kindCounts[i] += counts[i];
+            }
+            events += shard.getScheduler().getEventsProcessed();
+            windows = shard.getWindows();
+            migrations += shard.getMigrationsIn();
+            cpuNanos[shard.getIndex()] = shard.getCpuNanos();
+        }
+
+        void read(DataInputStream in, int index) throws IOException {
+            events += in.readLong();
+            windows = in.readLong();
+            migrations += in.readLong();
+            cpuNanos[index] = new long[in.readInt()];
+            for (int i = 0; i < cpuNanos[index].length; i++) {
+                cpuNanos[index][i] = in.readLong();
+            }
+            for (int i = 0; i < kindCounts.length; i++) {
+                kindCounts[i] += in.readInt();
+            }
+            int lines = in.readInt();
+            for (int i = 0; i < lines; i++) {
+                log.put(in.readLong(), in.readUTF());
+            }
+        }
+
+        static void write(DataOutputStream out, Shard shard) throws IOException {
+            out.writeLong(shard.getScheduler().getEventsProcessed());
+            out.writeLong(shard.getWindows());
+            out.writeLong(shard.getMigrationsIn());
+            long[] cpuNanos = shard.getCpuNanos();
+            out.writeInt(cpuNanos.length);
+            for (long nanos : cpuNanos) {
+                out.writeLong(nanos);
+            }
+            for (int count : shard.countKinds()) {
+                out.writeInt(count);
+            }
+            Map<Long, String> log = shard.log();
+            out.writeInt(log.size());
+            for (Map.Entry<Long, String> line : log.entrySet()) {
+                out.writeLong(line.getKey());
+                out.writeUTF(line.getValue());
+            }
+        }
+    }
+
+    private final ImageStore imageStore;
+    private final String save;
+    private final long seed;
+    private final ShardPlan plan;
+
+    /**
+     * Loads the world from a save file.
+     */
+    public ShardedSimulation(ImageStore imageStore, Path worldFile, long seed, int shardRows, int shardCols) throws IOException {
+        this(imageStore, Files.readString(worldFile), seed, shardRows, shardCols);
+    }
+
+    /**
+     * Takes the world as the contents of a save file.
+     */
+    public ShardedSimulation(ImageStore imageStore, String save, long seed, int shardRows, int shardCols) {
+        this.imageStore = imageStore;
+        this.save = save;
+        this.seed = seed;
+        int[] size = readSize(this.save);
+        this.plan = new ShardPlan(size[0], size[1], shardRows, shardCols);
+    }
+
+    public ShardPlan getPlan() {
+        return plan;
+    }
+
+    public Result run(double lifetime, Mode mode) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Result result = mode == Mode.THREADS ? runThreads(lifetime) : runProcesses(lifetime);
+        result.wallSeconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    private Result runThreads(double lifetime) throws IOException, InterruptedException {
+        int shards = plan.getShardCount();
+        ShardHub hub = new ShardHub(shards);
+        ExecutorService pool = Executors.newFixedThreadPool(shards);
+        try {
+            List<Future<Shard>> futures = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    try {
+                        Shard shard = new Shard(index, plan, imageStore, save, seed);
+                        shard.run(lifetime, hub.linkFor(index));
+                        return shard;
+                    } catch (RuntimeException | IOException e) {
+                        hub.abort();
+                        throw e;
+                    }
+                }));
+            }
+            Result result = new Result(plan);
+            for (Future<Shard> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw new IOException("shard failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+       This JVM starts the workers and tells each where the others take
+       calls; from then on they talk to their neighbours directly, and this
+       JVM only waits for their results. Every wait on a worker gives up
+       with an IOException once the worker has exited, and a worker whose
+       neighbour exits fails too, so a worker that crashes fails the run
+       instead of hanging it.
+    */
+    private Result runProcesses(double lifetime) throws IOException, InterruptedException {
+        int shards = plan.getShardCount();
+        List<Process> processes = new ArrayList<>();
+        DataInputStream[] ins = new DataInputStream[shards];
+        DataOutputStream[] outs = new DataOutputStream[shards];
+        int[] ports = new int[shards];
+        List<Socket> sockets = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(0, shards, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(POLL_MILLIS);
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            for (int i = 0; i < shards; i++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardWorker",
+                        Integer.toString(server.getLocalPort()), Integer.toString(i)).inheritIO().start());
+            }
+            long deadline = System.nanoTime() + CONNECT_TIMEOUT_MILLIS * 1_000_000L;
+            for (int connected = 0; connected < shards; connected++) {
+                Socket socket = accept(server, processes, ins, deadline);
+                sockets.add(socket);
+                socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+                DataInputStream hello = new DataInputStream(socket.getInputStream());
+                int index = hello.readInt();
+                if (index < 0 || index >= shards || ins[index] != null) {
+                    throw new IOException("unexpected shard worker " + index);
+                }
+                ports[index] = hello.readInt();
+                socket.setSoTimeout(POLL_MILLIS);
+                ins[index] = new DataInputStream(new BufferedInputStream(new WorkerInput(socket.getInputStream(), processes, index)));
+                outs[index] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+            byte[] bytes = save.getBytes(StandardCharsets.UTF_8);
+            for (DataOutputStream out : outs) {
+                out.writeInt(plan.getShardRows());
+                out.writeInt(plan.getShardCols());
+                out.writeLong(seed);
+                out.writeDouble(lifetime);
+                out.writeInt(shards);
+                for (int port : ports) {
+                    out.writeInt(port);
+                }
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.flush();
+            }
+
+            Result result = new Result(plan);
+            for (int i = 0; i < shards; i++) {
+                result.read(ins[i], i);
+            }
+            for (int i = 0; i < shards; i++) {
+                int code = processes.get(i).waitFor();
+                if (code != 0) {
+                    throw new IOException("shard worker " + i + " exited with code " + code);
+                }
+            }
+            return result;
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /*
+       Waits for the next worker to connect, failing if any worker that has
+       not connected yet has exited, or if they all take too long.
+    */
+    private static Socket accept(ServerSocket server, List<Process> processes, DataInputStream[] connected, long deadline) throws IOException {
+        while (true) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                for (int i = 0; i < processes.size(); i++) {
+                    if (connected[i] == null && !processes.get(i).isAlive()) {
+                        throw new IOException("shard worker " + i + " exited with code " + processes.get(i).exitValue() + " before connecting");
+                    }
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("shard workers did not connect in time");
+                }
+            }
+        }
+    }
+
+    /*
+       A worker's socket, read with a timeout so that the workers can be
+       checked on while the coordinator waits. A read that times out has
+       consumed nothing, so it is simply tried again. Waiting ends with an
+       IOException once this worker has gone, or any worker has failed.
+    */
+    private static final class WorkerInput extends FilterInputStream {
+        private final List<Process> processes;
+        private final int index;
+
+        private WorkerInput(InputStream in, List<Process> processes, int index) {
+            super(in);
+            this.processes = processes;
+            this.index = index;
+        }
+
+        public int read() throws IOException {
+            while (true) {
+                try {
+                    int read = super.read();
+                    if (read < 0) {
+                        throw closed();
+                    }
+                    return read;
+                } catch (SocketTimeoutException e) {
+                    checkWorkers();
+                } catch (SocketException e) {
+                    throw closed();
+                }
+            }
+        }
+
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (true) {
+                try {
+                    int read = super.read(buffer, offset, length);
+                    if (read < 0) {
+                        throw closed();
+                    }
+                    return read;
+                } catch (SocketTimeoutException e) {
+                    checkWorkers();
+                } catch (SocketException e) {
+                    throw closed();
+                }
+            }
+        }
+
+        private void checkWorkers() throws IOException {
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                if (!process.isAlive() && (i == index || process.exitValue() != 0)) {
+                    throw new IOException("shard worker " + i + " exited with code " + process.exitValue());
+                }
+            }
+        }
+
+        /*
+           The connection ended early; report how the worker exited if it
+           does so shortly.
+        */
+        private IOException closed() {
+            Process process = processes.get(index);
+            try {
+                if (process.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return new IOException("shard worker " + index + " exited with code " + process.exitValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new IOException("shard worker " + index + " closed its connection");
+        }
+    }
+
+    /*
+       The grid size from the Rows: and Cols: sections of a save.
+    */
+    private static int[] readSize(String save) {
+        int[] size = new int[2];
+        String header = "";
+        Scanner in = new Scanner(save);
+        while (in.hasNextLine()) {
+            String line = in.nextLine().strip();
+            if (line.endsWith(":")) {
+                header = line;
+            } else if (header.equals("Rows:")) {
+                size[0] = Integer.parseInt(line);
+            } else if (header.equals("Cols:")) {
+                size[1] = Integer.parseInt(line);
+            }
+        }
+        return size;
+    }
+}
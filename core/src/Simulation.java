@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * A single world together with its scheduler and the image store its
+ * entities draw from. Simulations keep no static state and need no
+ * Processing window, so many can run side by side in one JVM; the image
+ * store is only read once loaded and may be shared between them.
+ */
+public final class Simulation {
+    private static final String DEFAULT_IMAGE_NAME = "background_default";
+
+    private final ImageStore imageStore;
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final long seed;
+    private CheckpointRing checkpoints;
+    private PopulationHistory history;
+
+    /**
+     * Loads the world from a save file. Runs with the same world and seed
+     * produce the same results.
+     */
+    public Simulation(ImageStore imageStore, Path worldFile, long seed) throws IOException {
+        this(imageStore, Files.readString(worldFile), seed);
+    }
+
+    /**
+     * Takes the world as the contents of a save file.
+     */
+    public Simulation(ImageStore imageStore, String save, long seed) {
+        this.imageStore = imageStore;
+        this.seed = seed;
+        this.world = new WorldModel(seed);
+        world.load(new Scanner(save), imageStore, createDefaultBackground(imageStore));
+        this.scheduler = new EventScheduler();
+        for (EntityAb entity : world.getEntities()) {
+            entity.scheduleActions(scheduler, world, imageStore);
+        }
+    }
+
+    public static Background createDefaultBackground(ImageStore imageStore) {
+        return new Background(DEFAULT_IMAGE_NAME, imageStore.getImageList(DEFAULT_IMAGE_NAME));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public ImageStore getImageStore() {
+        return imageStore;
+    }
+
+    public WorldModel getWorld() {
+        return world;
+    }
+
+    public EventScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public double getCurrentTime() {
+        return scheduler.getCurrentTime();
+    }
+
+    /**
+     * Starts keeping a checkpoint every interval simulated seconds, up to
+     * capacity of them, so that seek can return to earlier times.
+     */
+    public void enableCheckpoints(double interval, int capacity) {
+        this.checkpoints = new CheckpointRing(interval, capacity);
+        checkpoints.capture(world, scheduler);
+    }
+
+    public CheckpointRing getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Lets plants that are only growing leave the scheduler until something
+     * looks at them; see Plant. This cannot be undone.
+     */
+    public void enableDormancy() {
+        world.enableDormancy();
+        for (EntityAb entity : world.getEntities()) {
+            if (entity instanceof Plant plant) {
+                plant.rest(scheduler, world, imageStore);
+            }
+        }
+    }
+
+    /**
+     * Starts sampling the population every interval simulated seconds,
+     * keeping the latest capacity samples.
+     */
+    public void enableHistory(double interval, int capacity) {
+        this.history = new PopulationHistory(world, scheduler, interval, capacity);
+    }
+
+    public PopulationHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Runs the simulation forward, stopping to take any checkpoints that
+     * fall due along the way.
+     */
+    public void advance(double seconds) {
+        double stopTime = scheduler.getCurrentTime() + seconds;
+        while (checkpoints != null && checkpoints.getNextCaptureTime() <= stopTime) {
+            scheduler.advanceTo(Math.max(checkpoints.getNextCaptureTime(), scheduler.getCurrentTime()), Long.MAX_VALUE);
+            checkpoints.capture(world, scheduler);
+        }
+        scheduler.advanceTo(stopTime, Long.MAX_VALUE);
+    }
+
+    /**
+     * Moves the simulation to the given time, backwards or forwards, by
+     * restoring the nearest earlier checkpoint and replaying from there.
+     * Seeking back past the oldest checkpoint kept is an error.
+     */
+    public void seek(double time) {
+        boolean checkpointAhead = checkpoints != null && checkpoints.getLatestTime() > scheduler.getCurrentTime();
+        if (time < scheduler.getCurrentTime() || checkpointAhead) {
+            if (checkpoints == null || !checkpoints.restoreBefore(time, world, scheduler, imageStore)) {
+                throw new IllegalArgumentException("no checkpoint before time " + time);
+            }
+        }
+        advance(time - scheduler.getCurrentTime());
+    }
+
+    public List<String> log() {
+        return world.log();
+    }
+}
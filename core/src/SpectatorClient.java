@@ -0,0 +1,240 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The receiving end of a SpectatorServer stream. Keeps the region it asked
+ * for as the server last described it, with sprites looked up by file name
+ * in a local image store, and never runs any entity logic. Frames are read
+ * on a background thread and applied whole, so readers always see the
+ * region as it was at the end of some frame.
+ */
+public final class SpectatorClient implements Closeable {
+    /*
+       One entity as the server described it, in region coordinates.
+    */
+    private static final class Remote {
+        private int x;
+        private int y;
+        private List<Sprite> images;
+        private int imageIndex;
+    }
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Map<String, Sprite> localSprites = new HashMap<>();
+    private final Sprite defaultSprite;
+
+    private final List<Sprite> sprites = new ArrayList<>();
+    private final List<List<Sprite>> lists = new ArrayList<>();
+    private final Map<Integer, Remote> entities = new HashMap<>();
+    private Sprite[] backgrounds = new Sprite[0];
+    private Sprite[] occupants = new Sprite[0];
+    private int col;
+    private int row;
+    private int numRows;
+    private int numCols;
+    private long frame;
+    private double time;
+    private long bytesReceived;
+    private IOException failure;
+
+    public SpectatorClient(ImageStore imageStore, String host, int port, int col, int row, int numRows, int numCols) throws IOException {
+        for (List<Sprite> frames : imageStore.getImages().values()) {
+            for (Sprite sprite : frames) {
+                localSprites.put(sprite.getFileName(), sprite);
+            }
+        }
+        this.defaultSprite = imageStore.getDefaultSprite();
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        requestRegion(col, row, numRows, numCols);
+        Thread reader = new Thread(this::readFrames, "spectator client");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Asks the server for a different region. The change shows once the
+     * server's snapshot of it arrives.
+     */
+    public void requestRegion(int col, int row, int numRows, int numCols) throws IOException {
+        synchronized (out) {
+            Varint.write(out, Math.max(0, col));
+            Varint.write(out, Math.max(0, row));
+            Varint.write(out, numRows);
+            Varint.write(out, numCols);
+            out.flush();
+        }
+    }
+
+    public synchronized int getCol() {
+        return col;
+    }
+
+    public synchronized int getRow() {
+        return row;
+    }
+
+    public synchronized int getNumRows() {
+        return numRows;
+    }
+
+    public synchronized int getNumCols() {
+        return numCols;
+    }
+
+    public synchronized long getFrame() {
+        return frame;
+    }
+
+    public synchronized double getTime() {
+        return time;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * The background sprite of a cell in region coordinates, or null if the
+     * cell is outside the world.
+     */
+    public synchronized Sprite getBackground(int col, int row) {
+        return backgrounds[row * numCols + col];
+    }
+
+    /**
+     * The current sprite of the occupant of a cell in region coordinates,
+     * or null if the cell is empty.
+     */
+    public synchronized Sprite getOccupant(int col, int row) {
+        return occupants[row * numCols + col];
+    }
+
+    /**
+     * Waits until the given frame has been applied. Returns false if the
+     * timeout passes or the stream ends first.
+     */
+    public synchronized boolean awaitFrame(long frame, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (this.frame < frame && failure == null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return this.frame >= frame;
+    }
+
+    /**
+     * Why the stream ended, or null while it is still running.
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void readFrames() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                byte[] bytes = new byte[Varint.readInt(in)];
+                in.readFully(bytes);
+                apply(bytes);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void apply(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        bytesReceived += bytes.length;
+        while (true) {
+            int type = Varint.readInt(in);
+            switch (type) {
+                case SpectatorServer.SNAPSHOT -> {
+                    col = Varint.readInt(in);
+                    row = Varint.readInt(in);
+                    numRows = Varint.readInt(in);
+                    numCols = Varint.readInt(in);
+                    sprites.clear();
+                    lists.clear();
+                    entities.clear();
+                    backgrounds = new Sprite[numRows * numCols];
+                    occupants = new Sprite[numRows * numCols];
+                }
+                case SpectatorServer.SPRITE -> {
+                    int id = Varint.readInt(in);
+                    sprites.add(id, localSprites.getOrDefault(in.readUTF(), defaultSprite));
+                }
+                case SpectatorServer.LIST -> {
+                    int id = Varint.readInt(in);
+                    List<Sprite> list = new ArrayList<>();
+                    for (int i = Varint.readInt(in); i > 0; i--) {
+                        list.add(sprites.get(Varint.readInt(in)));
+                    }
+                    lists.add(id, list);
+                }
+                case SpectatorServer.BACKGROUND -> {
+                    int x = Varint.readInt(in);
+                    int y = Varint.readInt(in);
+                    backgrounds[y * numCols + x] = sprites.get(Varint.readInt(in));
+                }
+                case SpectatorServer.SPAWN -> {
+                    Remote entity = new Remote();
+                    entities.put(Varint.readInt(in), entity);
+                    entity.x = Varint.readInt(in);
+                    entity.y = Varint.readInt(in);
+                    entity.images = lists.get(Varint.readInt(in));
+                    entity.imageIndex = Varint.readInt(in);
+                }
+                case SpectatorServer.MOVE -> {
+                    Remote entity = entities.get(Varint.readInt(in));
+                    entity.x = Varint.readInt(in);
+                    entity.y = Varint.readInt(in);
+                }
+                case SpectatorServer.IMAGES -> {
+                    Remote entity = entities.get(Varint.readInt(in));
+                    entity.images = lists.get(Varint.readInt(in));
+                    entity.imageIndex = Varint.readInt(in);
+                }
+                case SpectatorServer.FRAME -> entities.get(Varint.readInt(in)).imageIndex = Varint.readInt(in);
+                case SpectatorServer.REMOVE -> entities.remove(Varint.readInt(in));
+                case SpectatorServer.END -> {
+                    frame = Varint.read(in);
+                    time = in.readDouble();
+                    placeOccupants();
+                    notifyAll();
+                    return;
+                }
+                default -> throw new IOException("unknown spectator message " + type);
+            }
+        }
+    }
+
+    private void placeOccupants() {
+        Arrays.fill(occupants, null);
+        for (Remote entity : entities.values()) {
+            occupants[entity.y * numCols + entity.x] = entity.images.get(entity.imageIndex);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streams a running world to spectators over TCP. Each spectator names the
+ * region it wants to see; it is sent a snapshot of that region and then,
+ * every frame, only what changed there: entities that appeared, moved,
+ * changed images or frames, or left, and backgrounds that were replaced.
+ * Sprites are sent by file name the first time a spectator needs them and
+ * by number after that.
+ *
+ * publishFrame must be called on the thread that updates the world. Each
+ * spectator has its own sender thread and a short queue of frames; one
+ * that falls behind loses frames and is sent a fresh snapshot instead, so
+ * a slow spectator never holds up the simulation.
+ */
+public final class SpectatorServer implements WorldListener, Closeable {
+    static final int SNAPSHOT = 0;
+    static final int SPRITE = 1;
+    static final int LIST = 2;
+    static final int BACKGROUND = 3;
+    static final int SPAWN = 4;
+    static final int MOVE = 5;
+    static final int IMAGES = 6;
+    static final int FRAME = 7;
+    static final int REMOVE = 8;
+    static final int END = 9;
+
+    private static final int QUEUED_FRAMES = 8;
+
+    /*
+       What a spectator was last told about one entity.
+    */
+    private static final class Shown {
+        private final int handle;
+        private int x;
+        private int y;
+        private List<Sprite> images;
+        private int imageIndex;
+        private long seen;
+
+        private Shown(int handle) {
+            this.handle = handle;
+        }
+    }
+
+    private static final class Subscriber {
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUED_FRAMES);
+        private volatile int[] requested;
+        private volatile boolean closed;
+        private boolean resync = true;
+
+        private Thread sender;
+        private int col;
+        private int row;
+        private int numRows;
+        private int numCols;
+        private final Map<Entity, Shown> shown = new IdentityHashMap<>();
+        private final Map<Sprite, Integer> spriteIds = new IdentityHashMap<>();
+        private final Map<List<Sprite>, Integer> listIds = new IdentityHashMap<>();
+        private int[] backgrounds = new int[0];
+        private int nextHandle;
+        private long stamp;
+
+        private Subscriber(Socket socket) {
+            this.socket = socket;
+        }
+
+        private void start() {
+            this.sender = new Thread(this::sendFrames, "spectator sender");
+            sender.setDaemon(true);
+            sender.start();
+            Thread reader = new Thread(this::readRequests, "spectator reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /*
+           A spectator may ask for a new region at any time, as four
+           varints: column, row, rows and columns.
+        */
+        private void readRequests() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (true) {
+                    this.requested = new int[]{Varint.readInt(in), Varint.readInt(in), Varint.readInt(in), Varint.readInt(in)};
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void sendFrames() {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (!closed) {
+                    byte[] frame = queue.take();
+                    Varint.write(out, frame.length);
+                    out.write(frame);
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            sender.interrupt();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private final WorldModel world;
+    private final ServerSocket server;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Point> changedBackgrounds = new ArrayList<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private long frames;
+
+    /**
+     * Listens on the loopback address; a port of 0 picks a free one.
+     */
+    public SpectatorServer(WorldModel world, int port) throws IOException {
+        this(world, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public SpectatorServer(WorldModel world, InetAddress address, int port) throws IOException {
+        this.world = world;
+        this.server = new ServerSocket(port, 0, address);
+        world.addListener(this);
+        Thread acceptor = new Thread(this::accept, "spectator acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getFramesPublished() {
+        return frames;
+    }
+
+    public void backgroundChanged(Point pos) {
+        changedBackgrounds.add(pos);
+    }
+
+    /**
+     * Sends every spectator what changed in its region since the last
+     * frame, stamped with the given simulated time.
+     */
+    public void publishFrame(double time) throws IOException {
+        frames++;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.closed) {
+                subscribers.remove(subscriber);
+            } else if (subscriber.requested != null) {
+                bytes.reset();
+                encode(subscriber, time);
+                out.flush();
+                if (!subscriber.queue.offer(bytes.toByteArray())) {
+                    subscriber.resync = true;
+                }
+            }
+        }
+        changedBackgrounds.clear();
+    }
+
+    public void close() throws IOException {
+        server.close();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Subscriber subscriber = new Subscriber(socket);
+                subscribers.add(subscriber);
+                subscriber.start();
+            }
+        } catch (IOException e) {
+            // the server was closed
+        }
+    }
+
+    private void encode(Subscriber subscriber, double time) throws IOException {
+        int[] requested = subscriber.requested;
+        if (subscriber.resync || requested[0] != subscriber.col || requested[1] != subscriber.row
+                || requested[2] != subscriber.numRows || requested[3] != subscriber.numCols) {
+            encodeSnapshot(subscriber, requested);
+        } else {
+            for (Point pos : changedBackgrounds) {
+                if (inRegion(subscriber, pos)) {
+                    encodeBackground(subscriber, pos);
+                }
+            }
+        }
+        encodeEntities(subscriber);
+        Varint.write(out, END);
+        Varint.write(out, frames);
+        out.writeDouble(time);
+    }
+
+    /*
+       Forgets everything the spectator was told, so that it can start over
+       from this frame even if earlier frames were dropped.
+    */
+    private void encodeSnapshot(Subscriber subscriber, int[] requested) throws IOException {
+        subscriber.resync = false;
+        subscriber.col = requested[0];
+        subscriber.row = requested[1];
+        subscriber.numRows = requested[2];
+        subscriber.numCols = requested[3];
+        subscriber.shown.clear();
+        subscriber.spriteIds.clear();
+        subscriber.listIds.clear();
+        subscriber.backgrounds = new int[subscriber.numRows * subscriber.numCols];
+        subscriber.nextHandle = 0;
+
+        Varint.write(out, SNAPSHOT);
+        for (int value : requested) {
+            Varint.write(out, value);
+        }
+        for (int row = subscriber.row; row < subscriber.row + subscriber.numRows; row++) {
+            for (int col = subscriber.col; col < subscriber.col + subscriber.numCols; col++) {
+                Point pos = new Point(col, row);
+                if (world.withinBounds(pos)) {
+                    encodeBackground(subscriber, pos);
+                }
+            }
+        }
+    }
+
+    private void encodeBackground(Subscriber subscriber, Point pos) throws IOException {
+        int cell = (pos.y - subscriber.row) * subscriber.numCols + pos.x - subscriber.col;
+        int id = spriteId(subscriber, world.getBackgroundCell(pos).getCurrentImage());
+        if (subscriber.backgrounds[cell] != id + 1) {
+            subscriber.backgrounds[cell] = id + 1;
+            Varint.write(out, BACKGROUND);
+            Varint.write(out, pos.x - subscriber.col);
+            Varint.write(out, pos.y - subscriber.row);
+            Varint.write(out, id);
+        }
+    }
+
+    /*
+       Visits only the cells of the region, so the cost of a frame depends
+       on the region's size rather than the world's. Entities that were not
+       seen this time have left the region.
+    */
+    private void encodeEntities(Subscriber subscriber) throws IOException {
+        long stamp = ++subscriber.stamp;
+        int firstRow = Math.max(0, subscriber.row);
+        int firstCol = Math.max(0, subscriber.col);
+        int lastRow = Math.min(world.getNumRows(), subscriber.row + subscriber.numRows);
+        int lastCol = Math.min(world.getNumCols(), subscriber.col + subscriber.numCols);
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                Entity entity = world.getOccupancyCell(new Point(col, row));
+                if (entity != null) {
+                    encodeEntity(subscriber, entity, col - subscriber.col, row - subscriber.row, stamp);
+                }
+            }
+        }
+        Iterator<Shown> shown = subscriber.shown.values().iterator();
+        while (shown.hasNext()) {
+            Shown entry = shown.next();
+            if (entry.seen != stamp) {
+                Varint.write(out, REMOVE);
+                Varint.write(out, entry.handle);
+                shown.remove();
+            }
+        }
+    }
+
+    private void encodeEntity(Subscriber subscriber, Entity entity, int x, int y, long stamp) throws IOException {
+        List<Sprite> images = entity.getImages();
+        int imageIndex = entity.getImageIndex() % images.size();
+        Shown entry = subscriber.shown.get(entity);
+        if (entry == null) {
+            entry = new Shown(subscriber.nextHandle++);
+            int list = listId(subscriber, images);
+            Varint.write(out, SPAWN);
+            Varint.write(out, entry.handle);
+            Varint.write(out, x);
+            Varint.write(out, y);
+            Varint.write(out, list);
+            Varint.write(out, imageIndex);
+            subscriber.shown.put(entity, entry);
+        } else {
+            if (entry.x != x || entry.y != y) {
+                Varint.write(out, MOVE);
+                Varint.write(out, entry.handle);
+                Varint.write(out, x);
+                Varint.write(out, y);
+            }
+            if (entry.images != images) {
+                int list = listId(subscriber, images);
+                Varint.write(out, IMAGES);
+                Varint.write(out, entry.handle);
+                Varint.write(out, list);
+                Varint.write(out, imageIndex);
+            } else if (entry.imageIndex != imageIndex) {
+                Varint.write(out, FRAME);
+                Varint.write(out, entry.handle);
+                Varint.write(out, imageIndex);
+            }
+        }
+        entry.x = x;
+        entry.y = y;
+        entry.images = images;
+        entry.imageIndex = imageIndex;
+        entry.seen = stamp;
+    }
+
+    private int listId(Subscriber subscriber, List<Sprite> images) throws IOException {
+        Integer id = subscriber.listIds.get(images);
+        if (id == null) {
+            int[] sprites = new int[images.size()];
+            for (int i = 0; i < sprites.length; i++) {
+                sprites[i] = spriteId(subscriber, images.get(i));
+            }
+            id = subscriber.listIds.size();
+            subscriber.listIds.put(images, id);
+            Varint.write(out, LIST);
+            Varint.write(out, id);
+            Varint.write(out, sprites.length);
+            for (int sprite : sprites) {
+                Varint.write(out, sprite);
+            }
+        }
+        return id;
+    }
+
+    private int spriteId(Subscriber subscriber, Sprite sprite) throws IOException {
+        Integer id = subscriber.spriteIds.get(sprite);
+        if (id == null) {
+            id = subscriber.spriteIds.size();
+            subscriber.spriteIds.put(sprite, id);
+            Varint.write(out, SPRITE);
+            Varint.write(out, id);
+            out.writeUTF(sprite.getFileName() == null ? "" : sprite.getFileName());
+        }
+        return id;
+    }
+
+    private static boolean inRegion(Subscriber subscriber, Point pos) {
+        return pos.x >= subscriber.col && pos.x < subscriber.col + subscriber.numCols
+                && pos.y >= subscriber.row && pos.y < subscriber.row + subscriber.numRows;
+    }
+}
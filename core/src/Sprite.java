@@ -0,0 +1,16 @@
+/**
+ * One frame of an image, as the simulation sees it: just a reference to
+ * the file it comes from. The simulation only passes sprites around; a
+ * front end decides how, or whether, to turn them into pixels.
+ */
+public interface Sprite {
+    /**
+     * The image file, or null for the placeholder used for unknown keys.
+     */
+    String getFileName();
+
+    /**
+     * The color to make transparent, or null if the image is not keyed.
+     */
+    Integer getMaskColor();
+}
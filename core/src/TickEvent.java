@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one batch of scheduler events, as run by
+ * updateOnTime or a fast-forward slice. Disabled unless the recording's
+ * settings turn it on.
+ */
+@Name("forest.Tick")
+@Label("Simulation Tick")
+@Category("Forest Simulation")
+@Description("One batch of scheduled events run by the EventScheduler")
+@Enabled(false)
+final class TickEvent extends jdk.jfr.Event {
+    @Label("Events Run")
+    long eventsRun;
+
+    @Label("Simulated Start")
+    @Description("Simulated time in seconds when the batch started")
+    double simulatedStart;
+
+    @Label("Simulated Span")
+    @Description("Simulated seconds the batch covered")
+    double simulatedSpan;
+
+    @Label("Queue Size")
+    int queueSize;
+
+    void commit(long eventsRun, double simulatedStart, double simulatedSpan, int queueSize) {
+        this.eventsRun = eventsRun;
+        this.simulatedStart = simulatedStart;
+        this.simulatedSpan = simulatedSpan;
+        this.queueSize = queueSize;
+        commit();
+    }
+}
@@ -0,0 +1,46 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for an entity turning into another kind, such as
+ * a sapling growing into a tree. Disabled by default.
+ */
+@Name("forest.Transform")
+@Label("Entity Transform")
+@Category("Forest Simulation")
+@Description("An entity changing kind in place")
+@Enabled(false)
+final class TransformEvent extends jdk.jfr.Event {
+    @Label("Entity")
+    String entityId;
+
+    @Label("From")
+    String fromKind;
+
+    @Label("To")
+    String toKind;
+
+    @Label("Column")
+    int x;
+
+    @Label("Row")
+    int y;
+
+    /**
+     * Records that the entity has just changed from the given kind.
+     */
+    static void emit(Entity entity, EntityKind from) {
+        TransformEvent event = new TransformEvent();
+        if (event.shouldCommit()) {
+            event.entityId = entity.getId();
+            event.fromKind = from.name();
+            event.toKind = entity.getKind().name();
+            event.x = entity.getPosition().x;
+            event.y = entity.getPosition().y;
+            event.commit();
+        }
+    }
+}
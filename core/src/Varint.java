@@ -0,0 +1,50 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable-length integers, seven bits to a byte with the high bit set on
+ * every byte but the last. Small non-negative values, which most counts,
+ * coordinates and handles are, take a single byte.
+ */
+public final class Varint {
+    private Varint() {
+    }
+
+    public static void write(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long read(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint longer than ten bytes");
+    }
+
+    public static int readInt(DataInput in) throws IOException {
+        return (int) read(in);
+    }
+
+    /*
+       Signed values are zigzag encoded, so that small negative numbers are
+       small too.
+    */
+    public static void writeSigned(DataOutput out, long value) throws IOException {
+        write(out, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSigned(DataInput in) throws IOException {
+        long value = read(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.List;
+
+/**
+ * An agent taken out of the event queue because nothing it looks for
+ * exists. When an entity of one of its kinds appears, its action is
+ * scheduled again after the given period.
+ */
+public final class WaitingAgent {
+    private final EntityAb agent;
+    private final List<EntityKind> kinds;
+    private final Action action;
+    private final double afterPeriod;
+
+    public WaitingAgent(EntityAb agent, List<EntityKind> kinds, Action action, double afterPeriod) {
+        this.agent = agent;
+        this.kinds = kinds;
+        this.action = action;
+        this.afterPeriod = afterPeriod;
+    }
+
+    public EntityAb getAgent() {
+        return agent;
+    }
+
+    public List<EntityKind> getKinds() {
+        return kinds;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public double getAfterPeriod() {
+        return afterPeriod;
+    }
+}
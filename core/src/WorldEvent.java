@@ -0,0 +1,72 @@
+/**
+ * Something that happened to one entity, as published by
+ * WorldEventPublisher. Events are immutable, so subscribers may keep them
+ * and read them on any thread.
+ */
+public final class WorldEvent {
+    public enum Type {
+        SPAWNED,
+        MOVED,
+        REMOVED,
+        TRANSFORMED
+    }
+
+    private final Type type;
+    private final double time;
+    private final String id;
+    private final EntityKind kind;
+    private final EntityKind fromKind;
+    private final Point position;
+    private final Point fromPosition;
+
+    public WorldEvent(Type type, double time, String id, EntityKind kind, EntityKind fromKind, Point position, Point fromPosition) {
+        this.type = type;
+        this.time = time;
+        this.id = id;
+        this.kind = kind;
+        this.fromKind = fromKind;
+        this.position = position;
+        this.fromPosition = fromPosition;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public EntityKind getKind() {
+        return kind;
+    }
+
+    /**
+     * The kind before a transformation; otherwise the same as getKind.
+     */
+    public EntityKind getFromKind() {
+        return fromKind;
+    }
+
+    /**
+     * Where the entity is, or, once removed, where it was.
+     */
+    public Point getPosition() {
+        return position;
+    }
+
+    /**
+     * Where a moved entity came from; otherwise the same as getPosition.
+     */
+    public Point getFromPosition() {
+        return fromPosition;
+    }
+
+    public String toString() {
+        return String.format("%.3f %s %s %s %s", time, type, id, kind, position);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes the entities spawned, moved, removed and transformed in a
+ * world as a Flow of WorldEvents. Events are handed to each subscriber on
+ * a delivery thread of the publisher's own, through a buffer of at most
+ * bufferSize events per subscriber.
+ *
+ * When a subscriber's buffer is full, the DROP policy discards the event
+ * for that subscriber and counts it, so the simulation never waits; BLOCK
+ * makes the simulation wait until there is room, for subscribers that
+ * must see every event. With no subscribers nothing is allocated.
+ */
+public final class WorldEventPublisher implements Flow.Publisher<WorldEvent>, WorldListener, AutoCloseable {
+    public enum Policy {
+        DROP,
+        BLOCK
+    }
+
+    private final WorldModel world;
+    private final EventScheduler scheduler;
+    private final Policy policy;
+    private final ExecutorService executor;
+    private final SubmissionPublisher<WorldEvent> publisher;
+    private final Map<Flow.Subscriber<? super WorldEvent>, LongAdder> dropped = new ConcurrentHashMap<>();
+
+    public WorldEventPublisher(Simulation simulation, int bufferSize, Policy policy) {
+        this.world = simulation.getWorld();
+        this.scheduler = simulation.getScheduler();
+        this.policy = policy;
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "world events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, bufferSize);
+        world.addListener(this);
+    }
+
+    public void subscribe(Flow.Subscriber<? super WorldEvent> subscriber) {
+        dropped.put(subscriber, new LongAdder());
+        publisher.subscribe(subscriber);
+    }
+
+    public int getSubscriberCount() {
+        return publisher.getNumberOfSubscribers();
+    }
+
+    /**
+     * The number of events the given subscriber missed because its buffer
+     * was full.
+     */
+    public long getDropped(Flow.Subscriber<? super WorldEvent> subscriber) {
+        LongAdder count = dropped.get(subscriber);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getDroppedTotal() {
+        long total = 0;
+        for (LongAdder count : dropped.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public void entityAdded(Entity entity) {
+        if (publisher.hasSubscribers()) {
+            publish(WorldEvent.Type.SPAWNED, entity, entity.getKind(), entity.getPosition(), entity.getPosition());
+        }
+    }
+
+    public void entityRemoved(Entity entity) {
+        if (publisher.hasSubscribers()) {
+            publish(WorldEvent.Type.REMOVED, entity, entity.getKind(), entity.getPosition(), entity.getPosition());
+        }
+    }
+
+    public void entityMoved(Entity entity, Point from) {
+        if (publisher.hasSubscribers()) {
+            publish(WorldEvent.Type.MOVED, entity, entity.getKind(), entity.getPosition(), from);
+        }
+    }
+
+    public void entityTransformed(Entity entity, EntityKind from) {
+        if (publisher.hasSubscribers()) {
+            publish(WorldEvent.Type.TRANSFORMED, entity, from, entity.getPosition(), entity.getPosition());
+        }
+    }
+
+    /**
+     * Stops publishing. Subscribers are completed once they have been
+     * handed everything already published.
+     */
+    public void close() {
+        world.removeListener(this);
+        publisher.close();
+        executor.shutdown();
+    }
+
+    private void publish(WorldEvent.Type type, Entity entity, EntityKind fromKind, Point position, Point fromPosition) {
+        WorldEvent event = new WorldEvent(type, scheduler.getCurrentTime(), entity.getId(), entity.getKind(), fromKind, position, fromPosition);
+        if (policy == Policy.BLOCK) {
+            publisher.submit(event);
+        } else {
+            publisher.offer(event, (subscriber, item) -> {
+                dropped.get(subscriber).increment();
+                return false;
+            });
+        }
+    }
+}
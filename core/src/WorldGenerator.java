@@ -0,0 +1,336 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes synthetic save files of any size, the same every time for a given
+ * seed. Output is streamed a row at a time and only the obstacle clusters
+ * are kept in memory, so worlds far larger than the heap can be written.
+ *
+ * Obstacles fill round clusters. The other entities are spread uniformly
+ * over the remaining cells using selection sampling, which walks the cells
+ * once and always picks exactly the requested number of each kind. That
+ * needs the number of free cells up front, so a first pass counts the
+ * cells the clusters cover before the second pass writes anything.
+ */
+public final class WorldGenerator {
+    private static final String[] KINDS = {
+            Functions.DUDE_KEY, Functions.FAIRY_KEY, Functions.TREE_KEY,
+            Functions.SAPLING_KEY, Functions.STUMP_KEY, Functions.HOUSE_KEY};
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    private final int numRows;
+    private final int numCols;
+    private final long seed;
+    private final Map<String, Double> backgroundWeights = new LinkedHashMap<>();
+    private final long[] counts = new long[KINDS.length];
+    private int clusterCount;
+    private int maxClusterRadius = 3;
+
+    private int[] clusterCol;
+    private int[] clusterRow;
+    private int[] clusterRadius;
+
+    public WorldGenerator(int numRows, int numCols, long seed) {
+        if (numRows <= 0 || numCols <= 0) {
+            throw new IllegalArgumentException("world must have at least one cell");
+        }
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.seed = seed;
+        this.backgroundWeights.put("grass", 1.0);
+    }
+
+    /**
+     * Sets how often each background appears, relative to the others.
+     */
+    public void setBackgroundWeights(Map<String, Double> weights) {
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("at least one background is needed");
+        }
+        this.backgroundWeights.clear();
+        this.backgroundWeights.putAll(weights);
+    }
+
+    /**
+     * Sets how many entities of the given kind (dude, fairy, tree, sapling,
+     * stump or house) to place.
+     */
+    public void setCount(String kind, long count) {
+        int index = Arrays.asList(KINDS).indexOf(kind);
+        if (index < 0 || count < 0) {
+            throw new IllegalArgumentException("cannot place " + count + " of " + kind);
+        }
+        this.counts[index] = count;
+    }
+
+    public void setObstacleClusters(int count, int maxRadius) {
+        if (count < 0 || maxRadius < 0) {
+            throw new IllegalArgumentException("cluster count and radius must not be negative");
+        }
+        this.clusterCount = count;
+        this.maxClusterRadius = maxRadius;
+    }
+
+    public void write(Path file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), WRITE_BUFFER)) {
+            write(out);
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        WorldRandom random = new WorldRandom(seed);
+        placeClusters(random.split());
+        long free = (long) numRows * numCols - countObstacleCells();
+        long wanted = Arrays.stream(counts).sum();
+        if (wanted > free) {
+            throw new IllegalArgumentException(wanted + " entities requested but only " + free + " cells are free");
+        }
+
+        out.write("Comment:\n    Generated by WorldGenerator with seed " + seed + "\n");
+        out.write("Rows:\n" + numRows + "\nCols:\n" + numCols + "\n");
+        writeBackgrounds(out, random.split());
+        writeEntities(out, random.split(), free);
+    }
+
+    private void placeClusters(WorldRandom random) {
+        clusterCol = new int[clusterCount];
+        clusterRow = new int[clusterCount];
+        clusterRadius = new int[clusterCount];
+        Integer[] order = new Integer[clusterCount];
+        int[] col = new int[clusterCount];
+        int[] row = new int[clusterCount];
+        int[] radius = new int[clusterCount];
+        for (int i = 0; i < clusterCount; i++) {
+            col[i] = random.nextInt(numCols);
+            row[i] = random.nextInt(numRows);
+            radius[i] = maxClusterRadius == 0 ? 0 : random.nextInt(maxClusterRadius + 1);
+            order[i] = i;
+        }
+        // sorted by top row so the row sweeps can find clusters cheaply
+        Arrays.sort(order, (a, b) -> Integer.compare(row[a] - radius[a], row[b] - radius[b]));
+        for (int i = 0; i < clusterCount; i++) {
+            clusterCol[i] = col[order[i]];
+            clusterRow[i] = row[order[i]];
+            clusterRadius[i] = radius[order[i]];
+        }
+    }
+
+    private long countObstacleCells() {
+        long total = 0;
+        RowSweep sweep = new RowSweep();
+        for (int row = 0; row < numRows; row++) {
+            int[] spans = sweep.spans(row);
+            for (int i = 0; i < spans.length; i += 2) {
+                total += spans[i + 1] - spans[i] + 1;
+            }
+        }
+        return total;
+    }
+
+    private void writeBackgrounds(Writer out, WorldRandom random) throws IOException {
+        String[] ids = backgroundWeights.keySet().toArray(new String[0]);
+        double[] cumulative = new double[ids.length];
+        double sum = 0;
+        for (int i = 0; i < ids.length; i++) {
+            sum += backgroundWeights.get(ids[i]);
+            cumulative[i] = sum;
+        }
+        out.write("Backgrounds:\n");
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < numRows; row++) {
+            line.setLength(0);
+            for (int col = 0; col < numCols; col++) {
+                double pick = random.nextDouble() * sum;
+                int i = 0;
+                while (i < ids.length - 1 && pick >= cumulative[i]) {
+                    i++;
+                }
+                if (col > 0) {
+                    line.append(' ');
+                }
+                line.append(ids[i]);
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+
+    private void writeEntities(Writer out, WorldRandom random, long free) throws IOException {
+        long[] remaining = counts.clone();
+        long needed = Arrays.stream(remaining).sum();
+        long obstacles = 0;
+        RowSweep sweep = new RowSweep();
+        StringBuilder line = new StringBuilder();
+        out.write("Entities:\n");
+        for (int row = 0; row < numRows; row++) {
+            int[] spans = sweep.spans(row);
+            int span = 0;
+            for (int col = 0; col < numCols; col++) {
+                while (span < spans.length && spans[span + 1] < col) {
+                    span += 2;
+                }
+                line.setLength(0);
+                if (span < spans.length && spans[span] <= col) {
+                    line.append(Functions.OBSTACLE_KEY).append(' ').append(Functions.OBSTACLE_KEY).append('_').append(obstacles++);
+                    line.append(' ').append(col).append(' ').append(row);
+                    appendPeriod(line, random, 0.5, 1.5);
+                } else {
+                    // selection sampling: take this cell with probability needed / free
+                    boolean take = needed > 0 && random.nextDouble() * free < needed;
+                    free--;
+                    if (!take) {
+                        continue;
+                    }
+                    long pick = (long) (random.nextDouble() * needed);
+                    int kind = 0;
+                    while (pick >= remaining[kind]) {
+                        pick -= remaining[kind];
+                        kind++;
+                    }
+                    remaining[kind]--;
+                    needed--;
+                    appendEntity(line, random, KINDS[kind], remaining[kind], col, row);
+                }
+                out.write(line.append('\n').toString());
+            }
+        }
+    }
+
+    /*
+       Property ranges follow the entities in the bundled world.sav.
+    */
+    private static void appendEntity(StringBuilder line, WorldRandom random, String kind, long number, int col, int row) {
+        line.append(kind).append(' ').append(kind).append('_').append(number);
+        line.append(' ').append(col).append(' ').append(row);
+        switch (kind) {
+            case Functions.DUDE_KEY -> {
+                appendPeriod(line, random, 0.7, 0.9);
+                appendPeriod(line, random, 0.15, 0.2);
+                line.append(' ').append(2 + random.nextInt(4));
+            }
+            case Functions.FAIRY_KEY -> {
+                appendPeriod(line, random, 0.1, 0.2);
+                appendPeriod(line, random, 0.1, 0.2);
+            }
+            case Functions.TREE_KEY -> {
+                appendPeriod(line, random, 0.05, 0.6);
+                appendPeriod(line, random, 1.0, 1.4);
+                line.append(' ').append(1 + random.nextInt(3));
+            }
+            case Functions.SAPLING_KEY -> line.append(' ').append(random.nextInt(5));
+        }
+    }
+
+    /*
+       Writes a period in seconds to three decimal places; String.format is
+       slow enough to dominate output for very large worlds.
+    */
+    private static void appendPeriod(StringBuilder line, WorldRandom random, double min, double max) {
+        long millis = Math.round(Functions.getNumFromRange(random, max, min) * 1000);
+        long fraction = millis % 1000;
+        line.append(' ').append(millis / 1000).append('.');
+        if (fraction < 100) {
+            line.append('0');
+        }
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    /*
+       Walks the rows in order, tracking which clusters overlap the current
+       row, and returns the merged column spans they cover as start/end
+       pairs.
+    */
+    private final class RowSweep {
+        private final List<Integer> active = new ArrayList<>();
+        private int next;
+
+        private int[] spans(int row) {
+            while (next < clusterCount && clusterRow[next] - clusterRadius[next] <= row) {
+                active.add(next++);
+            }
+            active.removeIf(i -> clusterRow[i] + clusterRadius[i] < row);
+            List<int[]> covered = new ArrayList<>();
+            for (int i : active) {
+                int dy = row - clusterRow[i];
+                int half = (int) Math.sqrt((double) clusterRadius[i] * clusterRadius[i] - dy * dy);
+                int start = Math.max(0, clusterCol[i] - half);
+                int end = Math.min(numCols - 1, clusterCol[i] + half);
+                covered.add(new int[]{start, end});
+            }
+            covered.sort((a, b) -> Integer.compare(a[0], b[0]));
+            List<Integer> merged = new ArrayList<>();
+            for (int[] span : covered) {
+                int last = merged.size() - 1;
+                if (last > 0 && span[0] <= merged.get(last) + 1) {
+                    merged.set(last, Math.max(merged.get(last), span[1]));
+                } else {
+                    merged.add(span[0]);
+                    merged.add(span[1]);
+                }
+            }
+            return merged.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Usage: WorldGenerator out.sav -rows=N -cols=N [-seed=N] [-dudes=N]
+     * [-fairies=N] [-trees=N] [-saplings=N] [-stumps=N] [-houses=N]
+     * [-clusters=N] [-clusterradius=N] [-backgrounds=grass:4,flowers:1]
+     * An output of "-" writes to standard output.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> flags = new LinkedHashMap<>();
+        String output = null;
+        for (String arg : args) {
+            if (arg.startsWith("-") && arg.contains("=")) {
+                flags.put(arg.substring(1, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                output = arg;
+            }
+        }
+        if (output == null || !flags.containsKey("rows") || !flags.containsKey("cols")) {
+            System.err.println("usage: WorldGenerator <out.sav|-> -rows=N -cols=N [-seed=N] [-dudes=N] [-fairies=N] [-trees=N]"
+                    + " [-saplings=N] [-stumps=N] [-houses=N] [-clusters=N] [-clusterradius=N] [-backgrounds=id:weight,...]");
+            System.exit(2);
+        }
+        WorldGenerator generator = new WorldGenerator(Integer.parseInt(flags.get("rows")), Integer.parseInt(flags.get("cols")),
+                Long.parseLong(flags.getOrDefault("seed", "0")));
+        String[][] kindFlags = {{"dudes", Functions.DUDE_KEY}, {"fairies", Functions.FAIRY_KEY}, {"trees", Functions.TREE_KEY},
+                {"saplings", Functions.SAPLING_KEY}, {"stumps", Functions.STUMP_KEY}, {"houses", Functions.HOUSE_KEY}};
+        for (String[] kind : kindFlags) {
+            generator.setCount(kind[1], Long.parseLong(flags.getOrDefault(kind[0], "0")));
+        }
+        generator.setObstacleClusters(Integer.parseInt(flags.getOrDefault("clusters", "0")),
+                Integer.parseInt(flags.getOrDefault("clusterradius", "3")));
+        if (flags.containsKey("backgrounds")) {
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String entry : flags.get("backgrounds").split(",")) {
+                String[] parts = entry.split(":");
+                weights.put(parts[0], parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0);
+            }
+            generator.setBackgroundWeights(weights);
+        }
+
+        long start = System.nanoTime();
+        if (output.equals("-")) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), WRITE_BUFFER);
+            generator.write(out);
+            out.flush();
+        } else {
+            generator.write(Path.of(output));
+            System.err.printf("Wrote %s in %.1f s%n", output, (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
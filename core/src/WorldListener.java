@@ -0,0 +1,32 @@
+/**
+ * Receives notifications about changes made to a WorldModel.
+ */
+public interface WorldListener {
+    default void backgroundChanged(Point pos) {
+    }
+
+    default void entityAdded(Entity entity) {
+    }
+
+    /**
+     * Called while the entity still has the position it was removed from.
+     */
+    default void entityRemoved(Entity entity) {
+    }
+
+    /**
+     * Called when an entity moves, or when its kind, id, images or health
+     * are changed by something other than its own event. Moves and
+     * transformations end up here unless a listener handles them itself.
+     */
+    default void entityChanged(Entity entity) {
+    }
+
+    default void entityMoved(Entity entity, Point from) {
+        entityChanged(entity);
+    }
+
+    default void entityTransformed(Entity entity, EntityKind from) {
+        entityChanged(entity);
+    }
+}
@@ -0,0 +1,421 @@
+
+import java.util.*;
+
+/**
+ * Represents the 2D World in which this simulation is running.
+ * Keeps track of the size of the world, the background image for each
+ * location in the world, and the entities that populate the world.
+ */
+public final class WorldModel {
+    private int numRows;
+    private int numCols;
+    private Background[][] background;
+    private Entity[][] occupancy;
+
+
+
+    private Set<EntityAb> entities;
+    private final List<WorldListener> listeners = new ArrayList<>();
+    private final Map<EntityAb, WaitingAgent> waiting = new LinkedHashMap<>();
+    private final Map<EntityKind, Set<EntityAb>> waitingByKind = new EnumMap<>(EntityKind.class);
+    private final long seed;
+    private ShardBoundary boundary;
+    private PopulationStats stats;
+    private long nextSerial;
+    private boolean dormancy;
+
+    /*
+       The cells this model holds, from left and top up to but not
+       including right and bottom, cut down to the world's size once it is
+       known. Entities and backgrounds outside them are skipped on loading.
+    */
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    public WorldModel() {
+        this(System.nanoTime());
+    }
+
+    public WorldModel(long seed) {
+        this(seed, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A model of just one rectangle of a world, as a shard holds. Entities
+     * outside it still use up their serials when loaded, so those inside
+     * get the serials they would in a model of the whole world.
+     */
+    public WorldModel(long seed, int left, int top, int right, int bottom) {
+        this.seed = seed;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * A generator for the random decisions an entity makes at the given
+     * time. The world keeps no generator that advances: each one handed
+     * out is seeded from the world's seed, the entity's serial and the
+     * time alone, so what an entity draws is the same in whatever order
+     * entities act, on whichever thread or shard.
+     */
+    public WorldRandom randomFor(Entity entity, double time) {
+        long key = WorldRandom.mix(this.seed ^ WorldRandom.mix(entity.getSerial()));
+        return new WorldRandom(WorldRandom.mix(key ^ Double.doubleToLongBits(time)));
+    }
+
+    /**
+     * Lets plants whose coming events are all predictable take them off
+     * the scheduler and work out their state when it is next looked at.
+     * See Plant.
+     */
+    public void enableDormancy() {
+        this.dormancy = true;
+    }
+
+    public boolean isDormancyEnabled() {
+        return dormancy;
+    }
+
+    /**
+     * Hands every move into a cell the boundary does not own to it instead
+     * of making the move.
+     */
+    public void setBoundary(ShardBoundary boundary) {
+        this.boundary = boundary;
+    }
+
+    public void addListener(WorldListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeListener(WorldListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Tells listeners that an entity was changed in place; see
+     * WorldListener.entityChanged.
+     */
+    public void changed(Entity entity) {
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).entityChanged(entity);
+        }
+    }
+
+    /**
+     * Records that an entity changed kind in place, and wakes the agents
+     * waiting for its new kind.
+     */
+    public void transformed(EventScheduler scheduler, Entity entity, EntityKind from) {
+        this.stats.transformed(entity, from);
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).entityTransformed(entity, from);
+        }
+        wake(scheduler, entity.getKind());
+    }
+
+    /**
+     * Records a change in the wood some dude carries.
+     */
+    public void resourcesChanged(int delta) {
+        this.stats.resourcesChanged(delta);
+    }
+
+    public PopulationStats getStats() {
+        return this.stats;
+    }
+
+    public Optional<EntityAb> findNearest(Point pos, List<EntityKind> kinds) {
+        SearchEvent search = null;
+        if (Profiling.isActive()) {
+            search = new SearchEvent();
+            search.begin();
+        }
+        List<EntityAb> ofType = new LinkedList<>();
+        for (EntityKind kind : kinds) {
+            for (EntityAb entity : getEntities()) {
+                if (entity.getKind() == kind) {
+                    ofType.add(entity);
+                }
+            }
+        }
+
+        Optional<EntityAb> nearest = Functions.nearestEntity(ofType, pos);
+        if (search != null && search.shouldCommit()) {
+            search.commit(kinds, ofType.size(), nearest.isPresent(), pos);
+        }
+        return nearest;
+    }
+
+    /**
+     * Parks an agent whose search found nothing, instead of having it poll.
+     * It stays out of the event queue until wake is called for one of the
+     * kinds, or it is removed from the world.
+     */
+    public void park(EntityAb agent, List<EntityKind> kinds, Action action, double afterPeriod) {
+        this.waiting.put(agent, new WaitingAgent(agent, kinds, action, afterPeriod));
+        for (EntityKind kind : kinds) {
+            this.waitingByKind.computeIfAbsent(kind, k -> new LinkedHashSet<>()).add(agent);
+        }
+    }
+
+    public boolean isParked(Entity agent) {
+        return this.waiting.containsKey(agent);
+    }
+
+    /**
+     * The parked agents in the order they parked, which is the order
+     * they are woken in.
+     */
+    public Collection<WaitingAgent> getWaitingAgents() {
+        return Collections.unmodifiableCollection(this.waiting.values());
+    }
+
+    /**
+     * Reschedules every agent waiting for the given kind. Called whenever
+     * an entity takes on a kind after the world has loaded.
+     */
+    public void wake(EventScheduler scheduler, EntityKind kind) {
+        Set<EntityAb> agents = this.waitingByKind.get(kind);
+        if (agents == null || agents.isEmpty()) {
+            return;
+        }
+        for (EntityAb agent : new ArrayList<>(agents)) {
+            WaitingAgent parked = this.unpark(agent);
+            scheduler.scheduleEvent(agent, parked.getAction(), parked.getAfterPeriod());
+        }
+    }
+
+    private WaitingAgent unpark(Entity agent) {
+        WaitingAgent parked = this.waiting.remove(agent);
+        if (parked != null) {
+            for (EntityKind kind : parked.getKinds()) {
+                this.waitingByKind.get(kind).remove(agent);
+            }
+        }
+        return parked;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public Set<EntityAb> getEntities() {
+        return entities;
+    }
+
+    public void tryAddEntity(EntityAb entity) {
+        if (isOccupied(entity.getPosition())) {
+            // arguably the wrong type of exception, but we are not
+            // defining our own exceptions yet
+            throw new IllegalArgumentException("position occupied");
+        }
+        addEntity(entity);
+    }
+
+    public boolean isOccupied(Point pos) {
+        return holds(pos) && getOccupancyCell(pos) != null;
+    }
+
+    public void parseSaveFile(Scanner saveFile, ImageStore imageStore, Background defaultBackground){
+        String lastHeader = "";
+        int headerLine = 0;
+        int lineCounter = 0;
+        while(saveFile.hasNextLine()){
+            lineCounter++;
+            String line = saveFile.nextLine().strip();
+            if(line.endsWith(":")){
+                headerLine = lineCounter;
+                lastHeader = line;
+                switch (line){
+                    case "Backgrounds:" -> this.background = new Background[this.heldRows()][this.heldCols()];
+                    case "Entities:" -> {
+                        this.occupancy = new Entity[this.heldRows()][this.heldCols()];
+                        this.entities = new LinkedHashSet<>();
+                        this.stats = new PopulationStats(this.numRows, this.numCols);
+                    }
+                }
+            }else{
+                switch (lastHeader){
+                    case "Rows:" -> this.numRows = Integer.parseInt(line);
+                    case "Cols:" -> this.numCols = Integer.parseInt(line);
+                    case "Backgrounds:" -> parseBackgroundRow(line, lineCounter-headerLine-1, imageStore);
+                    case "Entities:" -> Functions.parseEntity(this, line, imageStore);
+                }
+            }
+        }
+    }
+
+    public void parseBackgroundRow(String line, int row, ImageStore imageStore) {
+        String[] cells = line.split(" ");
+        if(row >= this.top && row < this.bottom){
+            int cols = Math.min(cells.length, this.right);
+            for (int col = this.left; col < cols; col++){
+                this.background[row - this.top][col - this.left] = new Background(cells[col], imageStore.getImageList(cells[col]));
+            }
+        }
+    }
+
+    public void setBackgroundCell(Point pos, Background background) {
+        this.background[pos.y - this.top][pos.x - this.left] = background;
+        for (WorldListener listener : this.listeners) {
+            listener.backgroundChanged(pos);
+        }
+    }
+
+    public Background getBackgroundCell(Point pos) {
+        return this.background[pos.y - this.top][pos.x - this.left];
+    }
+
+    public Optional<Sprite> getBackgroundImage(Point pos) {
+        if (holds(pos)) {
+            return Optional.of(this.getBackgroundCell(pos).getCurrentImage());
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    public void load(Scanner saveFile, ImageStore imageStore, Background defaultBackground){
+        this.parseSaveFile(saveFile, imageStore, defaultBackground);
+        if(this.background == null){
+            this.background = new Background[this.heldRows()][this.heldCols()];
+            for (Background[] row : this.background)
+                Arrays.fill(row, defaultBackground);
+        }
+        if(this.occupancy == null){
+            this.occupancy = new Entity[this.heldRows()][this.heldCols()];
+            this.entities = new LinkedHashSet<>();
+            this.stats = new PopulationStats(this.numRows, this.numCols);
+        }
+    }
+
+    public void setOccupancyCell(Point pos, Entity entity) {
+        this.occupancy[pos.y - this.top][pos.x - this.left] = entity;
+    }
+    public Entity getOccupancyCell(Point pos) {
+        return this.occupancy[pos.y - this.top][pos.x - this.left];
+    }
+    public Optional<Entity> getOccupant(Point pos) {
+        if (this.isOccupied(pos)) {
+            return Optional.of(this.getOccupancyCell(pos));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    public void removeEntityAt(Point pos) {
+        if (holds(pos) && this.getOccupancyCell(pos) != null) {
+            Entity entity = this.getOccupancyCell(pos);
+
+            this.entities.remove(entity);
+            this.unpark(entity);
+            this.setOccupancyCell(pos, null);
+            this.stats.removed(entity, pos);
+            for (int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).entityRemoved(entity);
+            }
+
+            /* This moves the entity just outside the grid for
+             * debugging purposes. */
+            entity.setPosition(new Point(-1, -1));
+        }
+    }
+    public void removeAllEntities() {
+        for (EntityAb entity : new ArrayList<>(this.entities)) {
+            this.removeEntityAt(entity.getPosition());
+        }
+    }
+    public void removeEntity(EventScheduler scheduler, Entity entity) {
+        scheduler.unscheduleAllEvents(entity);
+        this.removeEntityAt(entity.getPosition());
+    }
+    public void moveEntity(EventScheduler scheduler, Entity entity, Point pos) {
+        Point oldPos = entity.getPosition();
+        if (this.boundary != null && withinBounds(pos) && !this.boundary.owns(pos)) {
+            this.boundary.requestMove(entity, pos);
+        } else if (holds(pos) && !pos.equals(oldPos)) {
+            this.setOccupancyCell(oldPos, null);
+            Optional<Entity> occupant = this.getOccupant(pos);
+            occupant.ifPresent(target -> this.removeEntity(scheduler, target));
+            this.setOccupancyCell(pos, entity);
+            entity.setPosition(pos);
+            this.stats.moved(entity, oldPos, pos);
+            for (int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).entityMoved(entity, oldPos);
+            }
+        }
+    }
+    /*
+           Assumes that there is no entity currently occupying the
+           intended destination cell.
+        */
+    public void addEntity(EntityAb entity) {
+        if (withinBounds(entity.getPosition())) {
+            if (entity.getSerial() < 0) {
+                entity.setSerial(this.nextSerial++);
+            } else {
+                this.nextSerial = Math.max(this.nextSerial, entity.getSerial() + 1);
+            }
+        }
+        if (holds(entity.getPosition())) {
+            this.setOccupancyCell(entity.getPosition(), entity);
+            this.entities.add(entity);
+            this.stats.added(entity, entity.getPosition());
+            for (int i = 0; i < this.listeners.size(); i++) {
+                this.listeners.get(i).entityAdded(entity);
+            }
+        }
+    }
+
+    public boolean withinBounds(Point pos) {
+        return pos.y >= 0 && pos.y < this.numRows && pos.x >= 0 && pos.x < this.numCols;
+    }
+
+    /**
+     * Whether the cell is one this model holds; for a model of the whole
+     * world, the same as withinBounds.
+     */
+    public boolean holds(Point pos) {
+        return withinBounds(pos) && pos.x >= this.left && pos.x < this.right && pos.y >= this.top && pos.y < this.bottom;
+    }
+
+    /*
+       Called when the grids are made, by which time the save has given
+       the world's size.
+    */
+    private int heldRows() {
+        this.bottom = Math.min(this.bottom, this.numRows);
+        this.top = Math.max(0, Math.min(this.top, this.bottom));
+        return this.bottom - this.top;
+    }
+
+    private int heldCols() {
+        this.right = Math.min(this.right, this.numCols);
+        this.left = Math.max(0, Math.min(this.left, this.right));
+        return this.right - this.left;
+    }
+
+    /**
+     * Helper method for testing. Don't move or modify this method.
+     */
+    public List<String> log(){
+        List<String> list = new ArrayList<>();
+        for (Entity entity : entities) {
+            String log = entity.log();
+            if(log != null) list.add(log);
+        }
+        return list;
+    }
+}
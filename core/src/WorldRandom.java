@@ -0,0 +1,56 @@
+/**
+ * A small seeded random number generator (SplitMix64). Every draw depends
+ * only on the seed and the draws before it, so a run can be replayed
+ * exactly from its seed. Independent streams are obtained with split(),
+ * or by seeding a generator with mix() of a key, as WorldModel.randomFor
+ * does.
+ */
+public final class WorldRandom {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long state;
+
+    public WorldRandom(long seed) {
+        this.state = seed;
+    }
+
+    public long nextLong() {
+        return mix(this.state += GOLDEN_GAMMA);
+    }
+
+    /**
+     * The SplitMix64 finalizer: scrambles the bits of a value so that
+     * nearby inputs give unrelated outputs. No two inputs give the same
+     * output.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a value in [0, bound).
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) Math.floorMod(nextLong(), (long) bound);
+    }
+
+    /**
+     * Returns a value in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * Returns a new generator whose stream is independent of this one.
+     */
+    public WorldRandom split() {
+        return new WorldRandom(nextLong());
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+
+/**
+ * The world background pre-rendered into square chunks of tiles. A chunk
+ * is rendered the first time it is drawn and again only after one of its
+ * cells changes, so drawing the background costs one blit per visible
+ * chunk no matter how many tiles the viewport holds. Only the chunks
+ * around the viewport are kept: once more are rendered than cover the
+ * viewport and a margin of chunks around it, the least recently drawn
+ * chunks outside that margin are dropped, and rendered again from the
+ * cells if they come back into view.
+ *
+ * The layer draws from its own copy of the background sprites. The thread
+ * that updates the world queues each change as it happens, and the drawing
+ * thread applies the changes when it polls them, so the two never share
+ * the world's background cells.
+ */
+public final class BackgroundLayer implements WorldListener {
+    private static final int CHUNK_TILES = 16;
+    private static final int MARGIN_CHUNKS = 1;
+
+    private final PApplet screen;
+    private final WorldModel world;
+    private final SpriteImages sprites;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int chunkRows;
+    private final int chunkCols;
+    private final LinkedHashMap<Integer, PGraphics> chunks;
+    private final Sprite[][] cells;
+    private final Set<Integer> dirtyChunks;
+    private final Queue<CellChange> changedCells;
+
+    public BackgroundLayer(PApplet screen, WorldModel world, SpriteImages sprites, int tileWidth, int tileHeight) {
+        this.screen = screen;
+        this.world = world;
+        this.sprites = sprites;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.chunkRows = chunkCount(world.getNumRows());
+        this.chunkCols = chunkCount(world.getNumCols());
+        this.chunks = new LinkedHashMap<>(16, 0.75f, true);
+        this.cells = new Sprite[world.getNumRows()][world.getNumCols()];
+        for (int row = 0; row < world.getNumRows(); row++) {
+            for (int col = 0; col < world.getNumCols(); col++) {
+                this.cells[row][col] = spriteAt(new Point(col, row));
+            }
+        }
+        this.dirtyChunks = new HashSet<>();
+        this.changedCells = new ConcurrentLinkedQueue<>();
+        world.addListener(this);
+    }
+
+    /*
+       Runs on the thread that updates the world.
+    */
+    public void backgroundChanged(Point pos) {
+        this.changedCells.add(new CellChange(pos, spriteAt(pos)));
+    }
+
+    /**
+     * Applies the next background change queued since the last poll and
+     * returns its cell, or returns null if there is none. Only for the
+     * drawing thread.
+     */
+    public Point pollChangedCell() {
+        CellChange change = this.changedCells.poll();
+        if (change == null) {
+            return null;
+        }
+        this.cells[change.pos.y][change.pos.x] = change.sprite;
+        int key = chunkKey(change.pos.y / CHUNK_TILES, change.pos.x / CHUNK_TILES);
+        if (this.chunks.containsKey(key)) {
+            this.dirtyChunks.add(key);
+        }
+        return change.pos;
+    }
+
+    /**
+     * Draws every chunk that overlaps the viewport, each with a single blit,
+     * then drops chunks that are no longer needed.
+     */
+    public void drawViewport(PGraphics target, Viewport viewport) {
+        int firstChunkRow = Math.max(0, viewport.getRow() / CHUNK_TILES);
+        int firstChunkCol = Math.max(0, viewport.getCol() / CHUNK_TILES);
+        int lastChunkRow = Math.min(this.chunkRows - 1, (viewport.getRow() + viewport.getNumRows() - 1) / CHUNK_TILES);
+        int lastChunkCol = Math.min(this.chunkCols - 1, (viewport.getCol() + viewport.getNumCols() - 1) / CHUNK_TILES);
+
+        for (int chunkRow = firstChunkRow; chunkRow <= lastChunkRow; chunkRow++) {
+            for (int chunkCol = firstChunkCol; chunkCol <= lastChunkCol; chunkCol++) {
+                Point viewPoint = viewport.worldToViewport(chunkCol * CHUNK_TILES, chunkRow * CHUNK_TILES);
+                target.image(chunk(chunkRow, chunkCol), viewPoint.x * this.tileWidth, viewPoint.y * this.tileHeight);
+            }
+        }
+        evict(firstChunkRow - MARGIN_CHUNKS, firstChunkCol - MARGIN_CHUNKS, lastChunkRow + MARGIN_CHUNKS, lastChunkCol + MARGIN_CHUNKS);
+    }
+
+    /*
+       Keeps at most as many chunks as fit in the given range of chunks,
+       dropping the least recently drawn of those outside it first.
+    */
+    private void evict(int firstChunkRow, int firstChunkCol, int lastChunkRow, int lastChunkCol) {
+        int capacity = (lastChunkRow - firstChunkRow + 1) * (lastChunkCol - firstChunkCol + 1);
+        Iterator<Map.Entry<Integer, PGraphics>> eldest = this.chunks.entrySet().iterator();
+        while (this.chunks.size() > capacity && eldest.hasNext()) {
+            int key = eldest.next().getKey();
+            int chunkRow = key / this.chunkCols;
+            int chunkCol = key % this.chunkCols;
+            if (chunkRow < firstChunkRow || chunkRow > lastChunkRow || chunkCol < firstChunkCol || chunkCol > lastChunkCol) {
+                eldest.remove();
+                this.dirtyChunks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Copies one tile, given in viewport coordinates, from its chunk. Tiles
+     * outside the world are cleared to black.
+     */
+    public void drawTile(PGraphics target, Viewport viewport, int col, int row) {
+        Point worldPoint = viewport.viewportToWorld(col, row);
+        int x = col * this.tileWidth;
+        int y = row * this.tileHeight;
+        if (!this.world.withinBounds(worldPoint)) {
+            target.fill(0);
+            target.rect(x, y, this.tileWidth, this.tileHeight);
+            return;
+        }
+        PGraphics chunk = chunk(worldPoint.y / CHUNK_TILES, worldPoint.x / CHUNK_TILES);
+        int u = (worldPoint.x % CHUNK_TILES) * this.tileWidth;
+        int v = (worldPoint.y % CHUNK_TILES) * this.tileHeight;
+        target.image(chunk, x, y, this.tileWidth, this.tileHeight, u, v, u + this.tileWidth, v + this.tileHeight);
+    }
+
+    private PGraphics chunk(int chunkRow, int chunkCol) {
+        int key = chunkKey(chunkRow, chunkCol);
+        PGraphics chunk = this.chunks.get(key);
+        boolean dirty = this.dirtyChunks.remove(key);
+        if (chunk == null || dirty) {
+            chunk = render(chunkRow, chunkCol, chunk);
+            this.chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    private PGraphics render(int chunkRow, int chunkCol, PGraphics chunk) {
+        int firstRow = chunkRow * CHUNK_TILES;
+        int firstCol = chunkCol * CHUNK_TILES;
+        int rows = Math.min(CHUNK_TILES, this.world.getNumRows() - firstRow);
+        int cols = Math.min(CHUNK_TILES, this.world.getNumCols() - firstCol);
+        if (chunk == null) {
+            chunk = this.screen.createGraphics(cols * this.tileWidth, rows * this.tileHeight);
+        }
+
+        TextureAtlas atlas = this.sprites.getAtlas();
+        chunk.beginDraw();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                Sprite sprite = this.cells[firstRow + row][firstCol + col];
+                if (sprite != null) {
+                    atlas.draw(chunk, this.sprites.get(sprite), col * this.tileWidth, row * this.tileHeight);
+                }
+            }
+        }
+        chunk.endDraw();
+        return chunk;
+    }
+
+    private Sprite spriteAt(Point pos) {
+        Background background = this.world.getBackgroundCell(pos);
+        return background == null ? null : background.getCurrentImage();
+    }
+
+    private int chunkKey(int chunkRow, int chunkCol) {
+        return chunkRow * this.chunkCols + chunkCol;
+    }
+
+    private static int chunkCount(int tiles) {
+        return (tiles + CHUNK_TILES - 1) / CHUNK_TILES;
+    }
+
+    private static final class CellChange {
+        private final Point pos;
+        private final Sprite sprite;
+
+        CellChange(Point pos, Sprite sprite) {
+            this.pos = pos;
+            this.sprite = sprite;
+        }
+    }
+}
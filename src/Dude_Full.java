@@ -1,81 +0,0 @@
-import processing.core.PImage;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-
-/**
- * An entity that exists in the world. See EntityKind for the
- * different kinds of entities that exist.
- */
-public final class Dude_Full extends EntityAb implements AnimationEntity, ActivityEntity {
-    private int resourceLimit;
-    private double actionPeriod;
-    private double animationPeriod;
-
-    public Dude_Full(String id, Point position, List<PImage> images, int resourceLimit, double actionPeriod, double animationPeriod, int health) {
-        super(id, position, images, health, 0);
-        this.resourceLimit = resourceLimit;
-        this.actionPeriod = actionPeriod;
-        this.animationPeriod = animationPeriod;
-    }
-
-    public double getAnimationPeriod() {
-        return this.animationPeriod;
-    }
-
-
-    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.getAnimationPeriod());
-    }
-
-    private boolean moveToFull(WorldModel world, Entity target, EventScheduler scheduler) {
-        if (Functions.adjacent(this.getPosition(), target.getPosition())) {
-            return true;
-        } else {
-            Point nextPos = nextPositionDude(world, target.getPosition());
-
-            if (!this.getPosition().equals(nextPos)) {
-                world.moveEntity(scheduler, this, nextPos);
-            }
-            return false;
-        }
-    }
-
-    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<EntityAb> fullTarget = world.findNearest(this.getPosition(), new ArrayList<>(List.of(House.class)));
-
-        if (fullTarget.isPresent() && this.moveToFull(world, fullTarget.get(), scheduler)) {
-            transformFull(world, scheduler, imageStore);
-        } else {
-            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        }
-    }
-
-    private Point nextPositionDude(WorldModel world, Point destPos) {
-        int horiz = Integer.signum(destPos.x - this.getPosition().x);
-        Point newPos = new Point(this.getPosition().x + horiz, this.getPosition().y);
-
-        if (horiz == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getClass() != Stump.class) {
-            int vert = Integer.signum(destPos.y - this.getPosition().y);
-            newPos = new Point(this.getPosition().x, this.getPosition().y + vert);
-
-            if (vert == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getClass() != Stump.class) {
-                newPos = this.getPosition();
-            }
-        }
-
-        return newPos;
-    }
-
-    private void transformFull(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        Dude_Not_Full dude = Functions.createDudeNotFull(this.getId(), this.getPosition(), this.actionPeriod, this.animationPeriod, this.resourceLimit, this.getImages());
-
-        world.removeEntity(scheduler, this);
-
-        world.addEntity(dude);
-        dude.scheduleActions(scheduler, world, imageStore);
-    }
-}
@@ -1,90 +0,0 @@
-import processing.core.PImage;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-
-/**
- * An entity that exists in the world. See EntityKind for the
- * different kinds of entities that exist.
- */
-public final class Dude_Not_Full extends EntityAb implements AnimationEntity, ActivityEntity{
-    private int resourceLimit;
-    private int resourceCount;
-    private double actionPeriod;
-    private double animationPeriod;
-
-    public Dude_Not_Full(String id, Point position, List<PImage> images, int resourceLimit, int resourceCount, double actionPeriod, double animationPeriod) {
-        super(id, position, images, 0, 0);
-        this.resourceLimit = resourceLimit;
-        this.resourceCount = resourceCount;
-        this.actionPeriod = actionPeriod;
-        this.animationPeriod = animationPeriod;
-    }
-    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.getAnimationPeriod());
-    }
-
-    public double getAnimationPeriod() {
-        return this.animationPeriod;
-    }
-
-
-    private boolean moveToNotFull(WorldModel world, Entity target, EventScheduler scheduler) {
-        if (Functions.adjacent(this.getPosition(), target.getPosition())) {
-            this.resourceCount += 1;
-            target.setHealth(target.getHealth() - 1);
-            return true;
-        } else {
-            Point nextPos = nextPositionDude(world, target.getPosition());
-
-            if (!this.getPosition().equals(nextPos)) {
-                world.moveEntity(scheduler, this, nextPos);
-            }
-            return false;
-        }
-    }
-
-
-    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        Optional<EntityAb> target = world.findNearest(this.getPosition(), new ArrayList<>(Arrays.asList(Tree.class, Sapling.class)));
-
-        if (target.isEmpty() || !this.moveToNotFull(world, target.get(), scheduler) || !transformNotFull(world, scheduler, imageStore)) {
-            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        }
-    }
-
-
-    private Point nextPositionDude(WorldModel world, Point destPos) {
-        int horiz = Integer.signum(destPos.x - this.getPosition().x);
-        Point newPos = new Point(this.getPosition().x + horiz, this.getPosition().y);
-
-        if (horiz == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getClass() != Stump.class) {
-            int vert = Integer.signum(destPos.y - this.getPosition().y);
-            newPos = new Point(this.getPosition().x, this.getPosition().y + vert);
-
-            if (vert == 0 || world.isOccupied(newPos) && world.getOccupancyCell(newPos).getClass() != Sapling.class) {
-                newPos = this.getPosition();
-            }
-        }
-
-        return newPos;
-    }
-    private boolean transformNotFull(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.resourceCount >= this.resourceLimit) {
-            Dude_Full dude = Functions.createDudeFull(this.getId(), this.getPosition(), this.actionPeriod, this.animationPeriod, this.resourceLimit, this.getImages());
-
-            world.removeEntity(scheduler, this);
-            scheduler.unscheduleAllEvents(this);
-
-            world.addEntity(dude);
-            dude.scheduleActions(scheduler, world, imageStore);
-
-            return true;
-        }
-
-        return false;
-    }
-}
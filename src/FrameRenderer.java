@@ -0,0 +1,172 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * Renders a rectangle of the world straight from sprite pixel data into an
+ * int[] frame buffer, without a Processing window. The frame is split into
+ * square blocks of tiles that are rasterized in parallel.
+ */
+public final class FrameRenderer {
+    private static final int BLOCK_TILES = 8;
+    private static final int OPAQUE = 0xff000000;
+
+    private final WorldModel world;
+    private final SpriteImages sprites;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    public FrameRenderer(WorldModel world, SpriteImages sprites, int tileWidth, int tileHeight) {
+        this.world = world;
+        this.sprites = sprites;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Renders the given number of rows and columns starting at the viewport
+     * origin into an RGB frame of numCols * tileWidth by numRows * tileHeight
+     * pixels. The world must not change while this runs.
+     */
+    public int[] render(Viewport viewport, int[] frame) {
+        int width = viewport.getNumCols() * this.tileWidth;
+        int height = viewport.getNumRows() * this.tileHeight;
+        if (frame == null || frame.length != width * height) {
+            frame = new int[width * height];
+        }
+        int blockCols = (viewport.getNumCols() + BLOCK_TILES - 1) / BLOCK_TILES;
+        int blockRows = (viewport.getNumRows() + BLOCK_TILES - 1) / BLOCK_TILES;
+
+        int[] target = frame;
+        IntStream.range(0, blockCols * blockRows).parallel().forEach(block -> {
+            int firstCol = (block % blockCols) * BLOCK_TILES;
+            int firstRow = (block / blockCols) * BLOCK_TILES;
+            int lastCol = Math.min(firstCol + BLOCK_TILES, viewport.getNumCols());
+            int lastRow = Math.min(firstRow + BLOCK_TILES, viewport.getNumRows());
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    renderTile(viewport, target, width, col, row);
+                }
+            }
+        });
+        return frame;
+    }
+
+    private void renderTile(Viewport viewport, int[] frame, int frameWidth, int col, int row) {
+        Point worldPoint = viewport.viewportToWorld(col, row);
+        int x = col * this.tileWidth;
+        int y = row * this.tileHeight;
+        if (!this.world.withinBounds(worldPoint)) {
+            fill(frame, frameWidth, x, y, OPAQUE);
+            return;
+        }
+
+        Background background = this.world.getBackgroundCell(worldPoint);
+        if (background == null) {
+            fill(frame, frameWidth, x, y, OPAQUE);
+        } else {
+            blit(frame, frameWidth, x, y, this.sprites.get(background.getCurrentImage()), true);
+        }
+        Entity occupant = this.world.getOccupancyCell(worldPoint);
+        if (occupant != null) {
+            blit(frame, frameWidth, x, y, this.sprites.get(occupant.getCurrentImage()), false);
+        }
+    }
+
+    private void fill(int[] frame, int frameWidth, int x, int y, int color) {
+        for (int row = 0; row < this.tileHeight; row++) {
+            int start = (y + row) * frameWidth + x;
+            Arrays.fill(frame, start, start + this.tileWidth, color);
+        }
+    }
+
+    /*
+       Copies the sprite into the tile, clipped to the tile size. RGB sprites
+       are copied as opaque; ARGB sprites are blended over what is already
+       there unless opaque is set.
+    */
+    private void blit(int[] frame, int frameWidth, int x, int y, PImage sprite, boolean opaque) {
+        sprite.loadPixels();
+        boolean blend = !opaque && sprite.format == PApplet.ARGB;
+        int width = Math.min(sprite.width, this.tileWidth);
+        int height = Math.min(sprite.height, this.tileHeight);
+        for (int row = 0; row < height; row++) {
+            int src = row * sprite.width;
+            int dst = (y + row) * frameWidth + x;
+            for (int col = 0; col < width; col++) {
+                int pixel = sprite.pixels[src + col];
+                if (!blend) {
+                    frame[dst + col] = pixel | OPAQUE;
+                } else {
+                    int alpha = pixel >>> 24;
+                    if (alpha == 0xff) {
+                        frame[dst + col] = pixel;
+                    } else if (alpha != 0) {
+                        frame[dst + col] = over(pixel, frame[dst + col], alpha);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int over(int src, int dst, int alpha) {
+        int inverse = 0xff - alpha;
+        int r = (((src >> 16) & 0xff) * alpha + ((dst >> 16) & 0xff) * inverse) / 0xff;
+        int g = (((src >> 8) & 0xff) * alpha + ((dst >> 8) & 0xff) * inverse) / 0xff;
+        int b = ((src & 0xff) * alpha + (dst & 0xff) * inverse) / 0xff;
+        return OPAQUE | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Writes the frame as a PNG file.
+     */
+    public static void writePng(int[] frame, int width, int height, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, frame, 0, width);
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    /**
+     * Renders the whole world at the given frame rate between two simulated
+     * times, writing frame-00000.png, frame-00001.png, ... into outDir.
+     */
+    public static int recordFrames(WorldModel world, SpriteImages sprites, EventScheduler scheduler, double startTime, double endTime, double fps, Path outDir, int tileWidth, int tileHeight) throws IOException {
+        Files.createDirectories(outDir);
+        FrameRenderer renderer = new FrameRenderer(world, sprites, tileWidth, tileHeight);
+        Viewport viewport = new Viewport(world.getNumRows(), world.getNumCols());
+        int width = world.getNumCols() * tileWidth;
+        int height = world.getNumRows() * tileHeight;
+
+        scheduler.updateOnTime(startTime - scheduler.getCurrentTime());
+        int[] frame = null;
+        int frames = (int) Math.floor((endTime - startTime) * fps) + 1;
+        for (int i = 0; i < frames; i++) {
+            frame = renderer.render(viewport, frame);
+            writePng(frame, width, height, outDir.resolve(String.format("frame-%05d.png", i)));
+            scheduler.updateOnTime(1 / fps);
+        }
+        return frames;
+    }
+
+    /*
+       Usage: FrameRenderer <outDir> <startTime> <endTime> <fps> [world file and flags]
+    */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("usage: FrameRenderer <outDir> <startTime> <endTime> <fps> [world file and flags]");
+            return;
+        }
+        long start = System.nanoTime();
+        int frames = VirtualWorld.headlessRender(Arrays.copyOfRange(args, 4, args.length),
+                Double.parseDouble(args[1]), Double.parseDouble(args[2]), Double.parseDouble(args[3]), Path.of(args[0]));
+        System.out.printf("Rendered %d frames in %.1f s%n", frames, (System.nanoTime() - start) / 1e9);
+    }
+}
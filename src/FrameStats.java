@@ -0,0 +1,149 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-frame timing samples kept in a fixed-size rolling window, with an
+ * optional CSV recording of every frame. Simulation steps may be reported
+ * from another thread than frames; steps are accumulated until the next
+ * frame is recorded.
+ */
+public final class FrameStats {
+    public static final int WINDOW = 240;
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final double[] frameMillis;
+    private final double[] simMillis;
+    private final double[] drawMillis;
+    private final long[] events;
+    private final int[] queueSizes;
+    private int next;
+    private int count;
+    private long frameNumber;
+    private long lastFrameNanos;
+
+    private final AtomicLong pendingSimNanos;
+    private final AtomicLong pendingEvents;
+    private volatile int lastQueueSize;
+    private volatile Map<String, Integer> entityCounts;
+
+    private BufferedWriter csv;
+
+    public FrameStats() {
+        this.frameMillis = new double[WINDOW];
+        this.simMillis = new double[WINDOW];
+        this.drawMillis = new double[WINDOW];
+        this.events = new long[WINDOW];
+        this.queueSizes = new int[WINDOW];
+        this.pendingSimNanos = new AtomicLong();
+        this.pendingEvents = new AtomicLong();
+        this.entityCounts = Map.of();
+    }
+
+    public void recordStep(long simNanos, long eventCount, int queueSize) {
+        this.pendingSimNanos.addAndGet(simNanos);
+        this.pendingEvents.addAndGet(eventCount);
+        this.lastQueueSize = queueSize;
+    }
+
+    public void recordEntityCounts(Map<String, Integer> counts) {
+        this.entityCounts = counts;
+    }
+
+    public void recordFrame(long drawNanos) {
+        long now = System.nanoTime();
+        double frame = this.lastFrameNanos == 0 ? 0 : (now - this.lastFrameNanos) / NANOS_PER_MILLI;
+        this.lastFrameNanos = now;
+
+        this.frameMillis[this.next] = frame;
+        this.simMillis[this.next] = this.pendingSimNanos.getAndSet(0) / NANOS_PER_MILLI;
+        this.drawMillis[this.next] = drawNanos / NANOS_PER_MILLI;
+        this.events[this.next] = this.pendingEvents.getAndSet(0);
+        this.queueSizes[this.next] = this.lastQueueSize;
+        if (this.csv != null) {
+            writeRow(this.next);
+        }
+        this.next = (this.next + 1) % WINDOW;
+        this.count = Math.min(this.count + 1, WINDOW);
+        this.frameNumber++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the frame time of the i-th sample in the window, oldest first.
+     */
+    public double getFrameMillis(int i) {
+        return this.frameMillis[index(i)];
+    }
+
+    public double getLatestSimMillis() {
+        return this.simMillis[index(this.count - 1)];
+    }
+
+    public double getLatestDrawMillis() {
+        return this.drawMillis[index(this.count - 1)];
+    }
+
+    public long getLatestEvents() {
+        return this.events[index(this.count - 1)];
+    }
+
+    public int getLatestQueueSize() {
+        return this.queueSizes[index(this.count - 1)];
+    }
+
+    public Map<String, Integer> getEntityCounts() {
+        return this.entityCounts;
+    }
+
+    public double getFramesPerSecond() {
+        double total = 0;
+        for (int i = 0; i < this.count; i++) {
+            total += this.frameMillis[i];
+        }
+        return total == 0 ? 0 : this.count * 1000.0 / total;
+    }
+
+    public boolean isRecording() {
+        return this.csv != null;
+    }
+
+    public void startRecording(Path file) throws IOException {
+        stopRecording();
+        this.csv = Files.newBufferedWriter(file);
+        this.csv.write("frame,frame_ms,sim_ms,draw_ms,events,queue_size");
+        this.csv.newLine();
+    }
+
+    public void stopRecording() {
+        if (this.csv != null) {
+            try {
+                this.csv.close();
+            } catch (IOException e) {
+                System.err.println("Could not finish frame CSV: " + e.getMessage());
+            }
+            this.csv = null;
+        }
+    }
+
+    private void writeRow(int i) {
+        try {
+            this.csv.write(String.format("%d,%.3f,%.3f,%.3f,%d,%d", this.frameNumber, this.frameMillis[i], this.simMillis[i], this.drawMillis[i], this.events[i], this.queueSizes[i]));
+            this.csv.newLine();
+        } catch (IOException e) {
+            System.err.println("Stopping frame CSV: " + e.getMessage());
+            stopRecording();
+        }
+    }
+
+    private int index(int i) {
+        return (this.next - this.count + i + WINDOW) % WINDOW;
+    }
+}
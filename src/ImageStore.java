@@ -1,25 +0,0 @@
-import java.util.HashMap;
-import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
-
-import processing.core.PImage;
-
-public final class ImageStore {
-    private final Map<String, List<PImage>> images;
-    private final List<PImage> defaultImages;
-
-    public ImageStore(PImage defaultImage) {
-        this.images = new HashMap<>();
-        defaultImages = new LinkedList<>();
-        defaultImages.add(defaultImage);
-    }
-
-    public Map<String, List<PImage>> getImages() {
-        return this.images;
-    }
-
-    public List<PImage> getImageList(String key) {
-        return this.images.getOrDefault(key, this.defaultImages);
-    }
-}
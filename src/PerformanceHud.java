@@ -0,0 +1,71 @@
+import java.util.Map;
+
+import processing.core.PApplet;
+
+/**
+ * Overlay showing frame rate, simulation and draw time, event throughput
+ * and entity counts, with a graph of recent frame times.
+ */
+public final class PerformanceHud {
+    private static final int MARGIN = 8;
+    private static final int LINE_HEIGHT = 14;
+    private static final int WIDTH = 250;
+    private static final int GRAPH_HEIGHT = 60;
+    private static final double GRAPH_MAX_MILLIS = 50;
+    private static final double TARGET_FRAME_MILLIS = 1000.0 / 60;
+
+    private volatile boolean visible;
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void toggle() {
+        this.visible = !this.visible;
+    }
+
+    public void draw(PApplet screen, FrameStats stats) {
+        if (!this.visible || stats.getCount() == 0) {
+            return;
+        }
+        Map<String, Integer> counts = stats.getEntityCounts();
+        int lines = 4 + counts.size();
+        int height = MARGIN * 3 + lines * LINE_HEIGHT + GRAPH_HEIGHT;
+
+        screen.pushStyle();
+        screen.noStroke();
+        screen.fill(0, 180);
+        screen.rect(MARGIN, MARGIN, WIDTH, height);
+
+        screen.fill(255);
+        screen.textSize(12);
+        int x = MARGIN * 2;
+        int y = MARGIN + LINE_HEIGHT;
+        screen.text(String.format("FPS %.1f%s", stats.getFramesPerSecond(), stats.isRecording() ? "  [REC]" : ""), x, y);
+        screen.text(String.format("sim %.2f ms   draw %.2f ms", stats.getLatestSimMillis(), stats.getLatestDrawMillis()), x, y += LINE_HEIGHT);
+        screen.text(String.format("events %d   queue %d", stats.getLatestEvents(), stats.getLatestQueueSize()), x, y += LINE_HEIGHT);
+        screen.text("entities", x, y += LINE_HEIGHT);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            screen.text(String.format("  %-14s %d", entry.getKey(), entry.getValue()), x, y += LINE_HEIGHT);
+        }
+
+        drawGraph(screen, stats, x, y + MARGIN, WIDTH - MARGIN * 2);
+        screen.popStyle();
+    }
+
+    private static void drawGraph(PApplet screen, FrameStats stats, int x, int y, int width) {
+        float bottom = y + GRAPH_HEIGHT;
+        screen.stroke(255, 80);
+        float target = (float) (bottom - GRAPH_HEIGHT * TARGET_FRAME_MILLIS / GRAPH_MAX_MILLIS);
+        screen.line(x, target, x + width, target);
+
+        screen.stroke(0, 255, 0);
+        float step = (float) width / FrameStats.WINDOW;
+        int offset = FrameStats.WINDOW - stats.getCount();
+        for (int i = 0; i < stats.getCount(); i++) {
+            double millis = Math.min(stats.getFrameMillis(i), GRAPH_MAX_MILLIS);
+            float px = x + (offset + i) * step;
+            screen.line(px, bottom, px, (float) (bottom - GRAPH_HEIGHT * millis / GRAPH_MAX_MILLIS));
+        }
+    }
+}
@@ -1,70 +0,0 @@
-import processing.core.PImage;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-
-/**
- * An entity that exists in the world. See EntityKind for the
- * different kinds of entities that exist.
- */
-public final class Sapling extends EntityAb implements ActivityEntity, AnimationEntity{
-    private double actionPeriod;
-    private double animationPeriod;
-    private int healthLimit;
-    private static final String TREE_KEY = "tree";
-    private static final String STUMP_KEY = "stump";
-    private static final double TREE_ANIMATION_MAX = 0.600;
-    private static final double TREE_ANIMATION_MIN = 0.050;
-    private static final double TREE_ACTION_MAX = 1.400;
-    private static final double TREE_ACTION_MIN = 1.000;
-    private static final int TREE_HEALTH_MAX = 3;
-    private static final int TREE_HEALTH_MIN = 1;
-
-    public Sapling(String id, Point position, List<PImage> images,int health, double actionPeriod, double animationPeriod,int healthLimit) {
-        super(id, position, images, health, 0);
-        this.actionPeriod = actionPeriod;
-        this.animationPeriod = animationPeriod;
-        this.healthLimit = healthLimit;
-    }
-    private boolean transformPlant(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        return transformSapling(world, scheduler, imageStore);
-    }
-    private boolean transformSapling(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.getHealth() <= 0) {
-            Stump stump = Functions.createStump(STUMP_KEY + "_" + this.getId(), this.getPosition(), imageStore.getImageList(STUMP_KEY));
-
-            world.removeEntity(scheduler, this);
-
-            world.addEntity(stump);
-
-            return true;
-        } else if (this.getHealth() >= this.healthLimit) {
-            Tree tree = Functions.createTree(TREE_KEY + "_" + this.getId(), this.getPosition(), Functions.getNumFromRange(TREE_ACTION_MAX, TREE_ACTION_MIN), Functions.getNumFromRange(this.TREE_ANIMATION_MAX, this.TREE_ANIMATION_MIN), Functions.getIntFromRange(this.TREE_HEALTH_MAX, this.TREE_HEALTH_MIN), imageStore.getImageList(this.TREE_KEY));
-
-            world.removeEntity(scheduler, this);
-
-            world.addEntity(tree);
-            tree.scheduleActions(scheduler, world, imageStore);
-
-            return true;
-        }
-
-        return false;
-    }
-    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-        this.setHealth(this.getHealth() + 1);
-        if (!this.transformPlant(world, scheduler, imageStore)) {
-            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        }
-    }
-    public double getAnimationPeriod() {
-        return animationPeriod;
-    }
-
-    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.getAnimationPeriod());
-    }
-}
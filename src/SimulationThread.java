@@ -0,0 +1,91 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the simulation off the Processing animation thread. After every
+ * step the thread captures the viewport into a ViewSnapshot and publishes
+ * it; the renderer picks up the newest one without locking.
+ *
+ * The snapshots are double buffered with one spare slot: the simulation
+ * fills its back buffer while the renderer holds its front buffer, and
+ * the two only ever exchange buffers through a single atomic swap, so
+ * neither side waits for the other or sees a half-written snapshot.
+ */
+public final class SimulationThread extends Thread {
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+    private static final long IDLE_MILLIS = 2;
+
+    private final Runnable step;
+    private final WorldView view;
+    private final Queue<Runnable> tasks;
+    private final ViewSnapshot[] slots;
+    private final AtomicInteger middle;
+    private int back;
+    private int front;
+    private volatile boolean running;
+
+    public SimulationThread(Runnable step, WorldView view) {
+        super("simulation");
+        setDaemon(true);
+        this.step = step;
+        this.view = view;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.slots = new ViewSnapshot[3];
+        for (int i = 0; i < this.slots.length; i++) {
+            this.slots[i] = view.createSnapshot();
+        }
+        this.back = 0;
+        this.middle = new AtomicInteger(1);
+        this.front = 2;
+        this.running = true;
+    }
+
+    /**
+     * Queues work (input handling, view changes) to run on the simulation
+     * thread between steps.
+     */
+    public void submit(Runnable task) {
+        this.tasks.add(task);
+    }
+
+    public void shutdown() {
+        this.running = false;
+        this.interrupt();
+    }
+
+    /**
+     * Returns the most recently published snapshot. Only the rendering
+     * thread may call this; the returned snapshot stays valid until its
+     * next call.
+     */
+    public ViewSnapshot acquireSnapshot() {
+        if ((this.middle.get() & FRESH) != 0) {
+            this.front = this.middle.getAndSet(this.front) & INDEX_MASK;
+        }
+        return this.slots[this.front];
+    }
+
+    public void run() {
+        publish();
+        while (this.running) {
+            Runnable task;
+            while ((task = this.tasks.poll()) != null) {
+                task.run();
+            }
+            this.step.run();
+            publish();
+            try {
+                Thread.sleep(IDLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        this.view.captureSnapshot(this.slots[this.back]);
+        this.back = this.middle.getAndSet(this.back | FRESH) & INDEX_MASK;
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.IOException;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * Draws a world streamed by a SpectatorServer, without running it. The
+ * arrow keys ask the server for a different region.
+ *
+ * Usage: SpectatorViewer [host] port
+ */
+public final class SpectatorViewer extends PApplet {
+    private static String[] ARGS;
+
+    private static final int VIEW_WIDTH = 640;
+    private static final int VIEW_HEIGHT = 480;
+    private static final int TILE_WIDTH = 32;
+    private static final int TILE_HEIGHT = 32;
+    private static final int VIEW_COLS = VIEW_WIDTH / TILE_WIDTH;
+    private static final int VIEW_ROWS = VIEW_HEIGHT / TILE_HEIGHT;
+    private static final String DEFAULT_HOST = "localhost";
+
+    private SpriteImages sprites;
+    private SpectatorClient client;
+    private int col;
+    private int row;
+
+    public void settings() {
+        size(VIEW_WIDTH, VIEW_HEIGHT);
+    }
+
+    public void setup() {
+        String host = ARGS.length > 1 ? ARGS[0] : DEFAULT_HOST;
+        int port = Integer.parseInt(ARGS[ARGS.length - 1]);
+        ImageStore imageStore = Headless.loadImageStore();
+        this.sprites = VirtualWorld.loadSprites(imageStore, this, 0);
+        try {
+            this.client = new SpectatorClient(imageStore, host, port, col, row, VIEW_ROWS, VIEW_COLS);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            exit();
+        }
+    }
+
+    /*
+       Draws the region as of the last complete frame. The client applies
+       frames under its own lock, so the cells are read under it too.
+    */
+    public void draw() {
+        background(0);
+        synchronized (client) {
+            for (int r = 0; r < client.getNumRows(); r++) {
+                for (int c = 0; c < client.getNumCols(); c++) {
+                    drawSprite(client.getBackground(c, r), c, r);
+                    drawSprite(client.getOccupant(c, r), c, r);
+                }
+            }
+            surface.setTitle(String.format("Spectating %.1f s, frame %d, %d KB received",
+                    client.getTime(), client.getFrame(), client.getBytesReceived() / 1024));
+        }
+    }
+
+    private void drawSprite(Sprite sprite, int c, int r) {
+        if (sprite != null) {
+            PImage img = sprites.get(sprite);
+            image(img, c * TILE_WIDTH, r * TILE_HEIGHT);
+        }
+    }
+
+    public void keyPressed() {
+        if (key == CODED) {
+            switch (keyCode) {
+                case UP -> row = Math.max(0, row - 1);
+                case DOWN -> row += 1;
+                case LEFT -> col = Math.max(0, col - 1);
+                case RIGHT -> col += 1;
+            }
+            try {
+                client.requestRegion(col, row, VIEW_ROWS, VIEW_COLS);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    public void dispose() {
+        try {
+            if (client != null) {
+                client.close();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+        super.dispose();
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: SpectatorViewer [host] port");
+            return;
+        }
+        SpectatorViewer.ARGS = args;
+        PApplet.main(SpectatorViewer.class);
+    }
+}
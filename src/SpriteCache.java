@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+import processing.core.PApplet;
+import processing.core.PImage;
+
+/**
+ * On-disk cache of decoded, color-keyed sprite pixels. Entries are named
+ * after the SHA-256 of the source file plus the keying parameters, so an
+ * edited image or a changed key color in the image list simply misses and
+ * is decoded again. Entries not used by a load are pruned afterwards.
+ */
+public final class SpriteCache {
+    private static final int MAGIC = 0x53505243; // "SPRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 5;
+    private static final String SUFFIX = ".px";
+    private static final String NO_KEY = "none";
+    private static final int COLOR_MASK = 0xffffff;
+
+    private final Path directory;
+    private final Set<Path> used;
+    private int hits;
+    private int misses;
+
+    public SpriteCache(Path directory) {
+        this.directory = directory;
+        this.used = new HashSet<>();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the image at the given path, from the cache when possible.
+     * A null maskColor means the image is not color keyed.
+     */
+    public PImage load(PApplet screen, String fileName, Integer maskColor) {
+        Path entry;
+        try {
+            entry = entryFor(Path.of(fileName), maskColor);
+        } catch (IOException e) {
+            return decode(screen, fileName, maskColor);
+        }
+        this.used.add(entry);
+
+        if (Files.isRegularFile(entry)) {
+            try {
+                PImage img = read(entry);
+                this.hits++;
+                return img;
+            } catch (IOException | IllegalStateException e) {
+                System.err.println("Discarding sprite cache entry " + entry.getFileName() + ": " + e.getMessage());
+            }
+        }
+
+        PImage img = decode(screen, fileName, maskColor);
+        this.misses++;
+        if (img != null && img.width != -1) {
+            try {
+                write(entry, img);
+            } catch (IOException e) {
+                System.err.println("Could not write sprite cache entry: " + e.getMessage());
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Deletes cache entries that were not requested since this cache was
+     * created, i.e. images dropped from or re-keyed in the image list.
+     */
+    public void prune() {
+        if (!Files.isDirectory(this.directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                if (!this.used.contains(entry)) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not prune sprite cache: " + e.getMessage());
+        }
+    }
+
+    private static PImage decode(PApplet screen, String fileName, Integer maskColor) {
+        PImage img = screen.loadImage(fileName);
+        if (img != null && img.width != -1 && maskColor != null) {
+            setAlpha(img, maskColor, 0);
+        }
+        return img;
+    }
+
+    /*
+      Called with color for which alpha should be set and alpha value.
+      setAlpha(img, color(255, 255, 255), 0));
+    */
+    public static void setAlpha(PImage img, int maskColor, int alpha) {
+        int alphaValue = alpha << 24;
+        int nonAlpha = maskColor & COLOR_MASK;
+        img.format = PApplet.ARGB;
+        img.loadPixels();
+        for (int i = 0; i < img.pixels.length; i++) {
+            if ((img.pixels[i] & COLOR_MASK) == nonAlpha) {
+                img.pixels[i] = alphaValue | nonAlpha;
+            }
+        }
+        img.updatePixels();
+    }
+
+    private Path entryFor(Path source, Integer maskColor) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] hash = digest.digest(Files.readAllBytes(source));
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        name.append('-').append(maskColor == null ? NO_KEY : Integer.toHexString(maskColor));
+        return this.directory.resolve(name + SUFFIX);
+    }
+
+    private static PImage read(Path entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            IntBuffer ints = buffer.asIntBuffer();
+            if (ints.remaining() < HEADER_INTS || ints.get() != MAGIC || ints.get() != VERSION) {
+                throw new IllegalStateException("bad header");
+            }
+            int width = ints.get();
+            int height = ints.get();
+            int format = ints.get();
+            if (width <= 0 || height <= 0 || ints.remaining() != width * height) {
+                throw new IllegalStateException("truncated pixels");
+            }
+            PImage img = new PImage(width, height, format);
+            img.loadPixels();
+            ints.get(img.pixels);
+            img.updatePixels();
+            return img;
+        }
+    }
+
+    private void write(Path entry, PImage img) throws IOException {
+        Files.createDirectories(this.directory);
+        img.loadPixels();
+        ByteBuffer buffer = ByteBuffer.allocate((HEADER_INTS + img.pixels.length) * Integer.BYTES);
+        buffer.asIntBuffer()
+                .put(MAGIC).put(VERSION).put(img.width).put(img.height).put(img.format)
+                .put(img.pixels);
+
+        Path temp = Files.createTempFile(this.directory, "sprite", ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
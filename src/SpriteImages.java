@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import processing.core.PImage;
+
+/**
+ * Decoded pixels for the sprites of an ImageStore. By default every sprite
+ * is decoded up front; with a positive memory budget sprites are decoded
+ * on first use instead and evicted least-recently-used once the decoded
+ * pixels exceed the budget. Sprites whose file cannot be decoded are drawn
+ * with the default image.
+ */
+public final class SpriteImages {
+    /**
+     * Decodes one image file, color keying it when maskColor is not null.
+     */
+    public interface Loader {
+        PImage load(String fileName, Integer maskColor);
+    }
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final ImageStore imageStore;
+    private final PImage defaultImage;
+    private final Loader loader;
+    private final long memoryBudget;
+    private final Map<Sprite, PImage> decoded;
+    private final LinkedHashMap<Sprite, PImage> resident;
+    private final Set<Sprite> missing;
+    private long residentBytes;
+    private TextureAtlas atlas;
+
+    public SpriteImages(ImageStore imageStore, PImage defaultImage, Loader loader, long memoryBudget) {
+        this.imageStore = imageStore;
+        this.defaultImage = defaultImage;
+        this.loader = loader;
+        this.memoryBudget = memoryBudget;
+        this.decoded = new IdentityHashMap<>();
+        this.resident = new LinkedHashMap<>(16, 0.75f, true);
+        this.missing = new HashSet<>();
+        if (!isLazy()) {
+            for (List<Sprite> frames : imageStore.getImages().values()) {
+                for (Sprite frame : frames) {
+                    this.decoded.put(frame, decode(frame));
+                }
+            }
+        }
+    }
+
+    public ImageStore getImageStore() {
+        return this.imageStore;
+    }
+
+    public boolean isLazy() {
+        return this.memoryBudget > 0;
+    }
+
+    public synchronized long getResidentBytes() {
+        return this.residentBytes;
+    }
+
+    /**
+     * The pixels of the given sprite. Eagerly loaded images are only read
+     * here, so this is safe to call from any thread.
+     */
+    public PImage get(Sprite sprite) {
+        if (!isLazy()) {
+            return this.decoded.getOrDefault(sprite, this.defaultImage);
+        }
+        return resolve(sprite);
+    }
+
+    /**
+     * Makes sure every frame of the given list is decoded and marks the
+     * frames as recently used. Does nothing for eagerly loaded images.
+     */
+    public void prefetch(List<Sprite> frames) {
+        if (isLazy()) {
+            for (Sprite frame : frames) {
+                resolve(frame);
+            }
+        }
+    }
+
+    private PImage decode(Sprite sprite) {
+        if (sprite.getFileName() == null) {
+            return this.defaultImage;
+        }
+        PImage img = this.loader.load(sprite.getFileName(), sprite.getMaskColor());
+        if (img == null || img.width == -1) {
+            return this.defaultImage;
+        }
+        return img;
+    }
+
+    private synchronized PImage resolve(Sprite sprite) {
+        if (sprite.getFileName() == null || this.missing.contains(sprite)) {
+            return this.defaultImage;
+        }
+        PImage img = this.resident.get(sprite);
+        if (img == null) {
+            img = decode(sprite);
+            if (img == this.defaultImage) {
+                this.missing.add(sprite);
+                return img;
+            }
+            this.resident.put(sprite, img);
+            this.residentBytes += sizeOf(img);
+            this.atlas = null;
+            evict();
+        }
+        return img;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Sprite, PImage>> eldest = this.resident.entrySet().iterator();
+        while (this.residentBytes > this.memoryBudget && this.resident.size() > 1) {
+            Map.Entry<Sprite, PImage> entry = eldest.next();
+            this.residentBytes -= sizeOf(entry.getValue());
+            eldest.remove();
+            this.atlas = null;
+        }
+    }
+
+    private static long sizeOf(PImage img) {
+        return (long) img.width * img.height * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Returns an atlas holding every decoded image. The atlas is packed on
+     * first use so headless runs never pay for it. Lazy stores pack the
+     * images resident at the time, and pack again on the next call after
+     * an image is decoded or evicted; images decoded in between are drawn
+     * directly until then. The atlas holds its own copy of the pixels, so
+     * a lazy store can use up to twice its budget.
+     */
+    public synchronized TextureAtlas getAtlas() {
+        if (this.atlas == null) {
+            List<List<PImage>> frameLists = new ArrayList<>();
+            frameLists.add(new ArrayList<>(isLazy() ? this.resident.values() : this.decoded.values()));
+            frameLists.add(List.of(this.defaultImage));
+            this.atlas = TextureAtlas.pack(frameLists);
+        }
+        return this.atlas;
+    }
+}
@@ -1,19 +0,0 @@
-import processing.core.PImage;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-
-/**
- * An entity that exists in the world. See EntityKind for the
- * different kinds of entities that exist.
- */
-public final class Stump extends EntityAb{
-    public Stump(String id, Point position, List<PImage> images) {
-        super(id, position, images, 0, 0);
-    }
-    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        return;
-    }
-}
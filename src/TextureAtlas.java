@@ -0,0 +1,122 @@
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+
+/**
+ * Packs every sprite frame into a single image so the renderer can draw
+ * all tiles from one source texture. Each frame is remembered by identity
+ * together with the sub-rectangle it occupies in the atlas.
+ */
+public final class TextureAtlas {
+    private static final int MAX_WIDTH = 1024;
+    private static final int OPAQUE = 0xff000000;
+
+    private final PImage image;
+    private final Map<PImage, Integer> regions;
+    private final int[] regionX;
+    private final int[] regionY;
+    private final int[] regionWidth;
+    private final int[] regionHeight;
+
+    private TextureAtlas(PImage image, Map<PImage, Integer> regions, int[] regionX, int[] regionY, int[] regionWidth, int[] regionHeight) {
+        this.image = image;
+        this.regions = regions;
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+    }
+
+    /*
+       Shelf packing: frames are laid out left to right in rows that are as
+       tall as the tallest frame in the row.
+    */
+    public static TextureAtlas pack(Collection<List<PImage>> frameLists) {
+        Map<PImage, Integer> regions = new IdentityHashMap<>();
+        for (List<PImage> frames : frameLists) {
+            for (PImage frame : frames) {
+                regions.putIfAbsent(frame, regions.size());
+            }
+        }
+
+        int count = regions.size();
+        int[] regionX = new int[count];
+        int[] regionY = new int[count];
+        int[] regionWidth = new int[count];
+        int[] regionHeight = new int[count];
+
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        int atlasWidth = 1;
+        for (Map.Entry<PImage, Integer> entry : regions.entrySet()) {
+            PImage frame = entry.getKey();
+            int index = entry.getValue();
+            if (x > 0 && x + frame.width > MAX_WIDTH) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            regionX[index] = x;
+            regionY[index] = y;
+            regionWidth[index] = frame.width;
+            regionHeight[index] = frame.height;
+            x += frame.width;
+            shelfHeight = Math.max(shelfHeight, frame.height);
+            atlasWidth = Math.max(atlasWidth, x);
+        }
+        int atlasHeight = Math.max(1, y + shelfHeight);
+
+        PImage image = new PImage(atlasWidth, atlasHeight, PApplet.ARGB);
+        image.loadPixels();
+        for (Map.Entry<PImage, Integer> entry : regions.entrySet()) {
+            int index = entry.getValue();
+            copyInto(image, entry.getKey(), regionX[index], regionY[index]);
+        }
+        image.updatePixels();
+
+        return new TextureAtlas(image, regions, regionX, regionY, regionWidth, regionHeight);
+    }
+
+    private static void copyInto(PImage atlas, PImage frame, int x, int y) {
+        frame.loadPixels();
+        int fill = frame.format == PApplet.ARGB ? 0 : OPAQUE;
+        for (int row = 0; row < frame.height; row++) {
+            int src = row * frame.width;
+            int dst = (y + row) * atlas.width + x;
+            for (int col = 0; col < frame.width; col++) {
+                atlas.pixels[dst + col] = frame.pixels[src + col] | fill;
+            }
+        }
+    }
+
+    public PImage getImage() {
+        return this.image;
+    }
+
+    public boolean contains(PImage frame) {
+        return this.regions.containsKey(frame);
+    }
+
+    /**
+     * Draws the given frame at (x, y). Frames that were not packed (for
+     * instance images created after the atlas was built) are drawn directly.
+     */
+    public void draw(PGraphics target, PImage frame, float x, float y) {
+        Integer index = this.regions.get(frame);
+        if (index == null) {
+            target.image(frame, x, y);
+        } else {
+            int u = this.regionX[index];
+            int v = this.regionY[index];
+            int w = this.regionWidth[index];
+            int h = this.regionHeight[index];
+            target.image(this.image, x, y, w, h, u, v, u + w, v + h);
+        }
+    }
+}
@@ -1,50 +0,0 @@
-import processing.core.PImage;
-
-import java.util.List;
-
-/**
- * An entity that exists in the world. See EntityKind for the
- * different kinds of entities that exist.
- */
-public final class Tree extends EntityAb implements AnimationEntity, ActivityEntity{
-    private double actionPeriod;
-    private double animationPeriod;
-    private static final String STUMP_KEY = "stump";
-
-    public Tree(String id, Point position, List<PImage> images,double actionPeriod, double animationPeriod, int health) {
-        super(id, position, images, health, 0);
-        this.actionPeriod = actionPeriod;
-        this.animationPeriod = animationPeriod;
-    }
-    public double getAnimationPeriod() {
-        return this.animationPeriod;
-    }
-    private boolean transformPlant(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        return transformTree(world, scheduler, imageStore);
-    }
-    private boolean transformTree(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        if (this.getHealth() <= 0) {
-            EntityAb stump = Functions.createStump(STUMP_KEY + "_" + this.getId(), this.getPosition(), imageStore.getImageList(STUMP_KEY));
-
-            world.removeEntity(scheduler, this);
-
-            world.addEntity(stump);
-
-            return true;
-        }
-
-        return false;
-    }
-
-    public void executeActivity(WorldModel world, ImageStore imageStore, EventScheduler scheduler) {
-
-        if (!this.transformPlant(world, scheduler, imageStore)) {
-
-            scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        }
-    }
-    public void scheduleActions(EventScheduler scheduler, WorldModel world, ImageStore imageStore) {
-        scheduler.scheduleEvent(this, Functions.createActivityAction(this, world, imageStore), this.actionPeriod);
-        scheduler.scheduleEvent(this, Functions.createAnimationAction(this, 0), this.getAnimationPeriod());
-    }
-}
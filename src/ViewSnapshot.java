@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What the viewport showed at one moment: its position in the world, and
+ * the sprite list and frame index of the occupant of every visible cell.
+ * A snapshot is filled by the simulation and left untouched while the
+ * renderer reads it. It holds no decoded images, so the simulation never
+ * waits for a sprite to be decoded; the renderer resolves them.
+ */
+public final class ViewSnapshot {
+    private final List<List<Sprite>> occupantImages;
+    private final int[] occupantFrames;
+    private final Set<Sprite> nearbySprites = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int col;
+    private int row;
+
+    public ViewSnapshot(int numRows, int numCols) {
+        this.occupantImages = new ArrayList<>(Collections.nCopies(numRows * numCols, null));
+        this.occupantFrames = new int[numRows * numCols];
+    }
+
+    public int getCol() {
+        return col;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Returns the occupant's sprites for the given cell, indexed row-major
+     * in viewport coordinates, or null if the cell is empty.
+     */
+    public List<Sprite> getOccupantImages(int cell) {
+        return this.occupantImages.get(cell);
+    }
+
+    public int getOccupantFrame(int cell) {
+        return this.occupantFrames[cell];
+    }
+
+    /**
+     * The sprites of the backgrounds and occupants around the viewport, for
+     * a lazy renderer to decode ahead of need.
+     */
+    public Set<Sprite> getNearbySprites() {
+        return this.nearbySprites;
+    }
+
+    void reset(Viewport viewport) {
+        this.col = viewport.getCol();
+        this.row = viewport.getRow();
+        Collections.fill(this.occupantImages, null);
+        this.nearbySprites.clear();
+    }
+
+    void setOccupant(int cell, List<Sprite> images, int frame) {
+        this.occupantImages.set(cell, images);
+        this.occupantFrames[cell] = frame;
+    }
+
+    void addNearby(Sprite sprite) {
+        this.nearbySprites.add(sprite);
+    }
+
+    void addNearby(List<Sprite> sprites) {
+        this.nearbySprites.addAll(sprites);
+    }
+}
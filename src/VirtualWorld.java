@@ -1,5 +1,6 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
 
 import processing.core.*;
@@ -15,8 +16,7 @@ public final class VirtualWorld extends PApplet {
     private static final int VIEW_COLS = VIEW_WIDTH / TILE_WIDTH;
     private static final int VIEW_ROWS = VIEW_HEIGHT / TILE_HEIGHT;
 
-    private static final String IMAGE_LIST_FILE_NAME = "imagelist";
-    private static final String DEFAULT_IMAGE_NAME = "background_default";
+    private static final String SPRITE_CACHE_DIR = ".spritecache";
     private static final int DEFAULT_IMAGE_COLOR = 0x808080;
 
     private static final String FAST_FLAG = "-fast";
@@ -25,15 +25,41 @@ public final class VirtualWorld extends PApplet {
     private static final double FAST_SCALE = 0.5;
     private static final double FASTER_SCALE = 0.25;
     private static final double FASTEST_SCALE = 0.10;
+    private static final String THREADED_FLAG = "-threaded";
+    private static final String IMAGE_BUDGET_FLAG = "-imagebudget=";
+    private static final String FAST_FORWARD_FLAG = "-ff=";
+    private static final String FAST_FORWARD_EVENTS_FLAG = "-ffevents=";
+    private static final String NO_RENDER_FLAG = "-norender";
+    private static final String SEED_FLAG = "-seed=";
+    private static final long FAST_FORWARD_SLICE_NANOS = 200_000_000;
+    private static final char HUD_KEY = 'p';
+    private static final char RECORD_KEY = 'r';
+    private static final char SEEK_BACK_KEY = '[';
+    private static final char SEEK_FORWARD_KEY = ']';
+    private static final double SEEK_SECONDS = 30;
+    private static final double CHECKPOINT_INTERVAL = 10;
+    private static final int CHECKPOINT_CAPACITY = 360;
+    private static final long BYTES_PER_MB = 1024 * 1024;
 
-    private String loadFile = "world.sav";
+    private String loadFile = Headless.DEFAULT_WORLD_FILE;
     private long startTimeMillis = 0;
     private double timeScale = 1.0;
+    private long imageBudgetBytes = 0;
+    private boolean threaded = false;
+    private long seed = System.nanoTime();
+    private double fastForwardSeconds = 0;
+    private long fastForwardEvents = 0;
+    private FastForward fastForward;
 
     private ImageStore imageStore;
+    private SpriteImages sprites;
+    private Simulation simulation;
     private WorldModel world;
     private WorldView view;
     private EventScheduler scheduler;
+    private SimulationThread simulationThread;
+    private final FrameStats frameStats = new FrameStats();
+    private final PerformanceHud hud = new PerformanceHud();
 
     public void settings() {
         size(VIEW_WIDTH, VIEW_HEIGHT);
@@ -44,48 +70,142 @@ public final class VirtualWorld extends PApplet {
     */
     public void setup() {
         parseCommandLine(ARGS);
-        loadImages(IMAGE_LIST_FILE_NAME);
-        loadWorld(loadFile, this.imageStore);
+        this.imageStore = Headless.loadImageStore();
+        this.sprites = loadSprites(imageStore, this, imageBudgetBytes);
+        try {
+            this.simulation = new Simulation(imageStore, Path.of(loadFile), seed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        simulation.enableCheckpoints(CHECKPOINT_INTERVAL, CHECKPOINT_CAPACITY);
+        System.out.println("Seed " + seed);
+        this.world = simulation.getWorld();
+        this.scheduler = simulation.getScheduler();
 
-        this.view = new WorldView(VIEW_ROWS, VIEW_COLS, this, world, TILE_WIDTH, TILE_HEIGHT);
-        this.scheduler = new EventScheduler();
+        this.view = new WorldView(VIEW_ROWS, VIEW_COLS, this, world, sprites, TILE_WIDTH, TILE_HEIGHT);
         this.startTimeMillis = System.currentTimeMillis();
-        this.scheduleActions(world, scheduler, imageStore);
+        if (fastForwardSeconds > 0 || fastForwardEvents > 0) {
+            this.fastForward = new FastForward(scheduler, fastForwardSeconds, fastForwardEvents);
+        }
     }
 
     public void draw() {
-        double appTime = (System.currentTimeMillis() - startTimeMillis) * 0.001;
-        double frameTime = (appTime - scheduler.getCurrentTime())/timeScale;
-        this.update(frameTime);
-        view.drawViewport();
+        if (threaded && simulationThread == null) {
+            simulationThread = new SimulationThread(this::advance, view);
+            simulationThread.start();
+        }
+        if (simulationThread == null) {
+            advance();
+        }
+        long drawStart = System.nanoTime();
+        if (simulationThread == null) {
+            view.drawViewport();
+        } else {
+            view.drawSnapshot(simulationThread.acquireSnapshot());
+        }
+        frameStats.recordFrame(System.nanoTime() - drawStart);
+        hud.draw(this, frameStats);
+    }
+
+    public void dispose() {
+        if (simulationThread != null) {
+            simulationThread.shutdown();
+        }
+        frameStats.stopRecording();
+        super.dispose();
+    }
+
+    /*
+       Simulated time runs 1/timeScale times faster than wall time. While
+       fast-forwarding, each call instead runs events flat out for a slice
+       of wall time, so the window is only redrawn a few times a second; the
+       clock is then rebased so real-time play continues from there.
+    */
+    private void advance() {
+        long start = System.nanoTime();
+        long eventsBefore = scheduler.getEventsProcessed();
+        if (fastForward != null) {
+            if (fastForward.step(FAST_FORWARD_SLICE_NANOS)) {
+                System.out.println(fastForward.report());
+                fastForward = null;
+                rebaseClock();
+            }
+        } else {
+            double appTime = (System.currentTimeMillis() - startTimeMillis) * 0.001;
+            double frameTime = appTime / timeScale - scheduler.getCurrentTime();
+            this.update(frameTime);
+        }
+        frameStats.recordStep(System.nanoTime() - start, scheduler.getEventsProcessed() - eventsBefore, scheduler.getQueueSize());
+        if (hud.isVisible()) {
+            frameStats.recordEntityCounts(countEntities());
+        }
+    }
+
+    private void rebaseClock() {
+        startTimeMillis = System.currentTimeMillis() - (long) (scheduler.getCurrentTime() * timeScale * 1000);
+    }
+
+    /*
+       Jumps the simulation by the given number of simulated seconds, but no
+       further back than the oldest checkpoint, then carries on in real time
+       from there.
+    */
+    private void seek(double seconds) {
+        simulation.seek(Math.max(simulation.getCheckpoints().getOldestTime(), scheduler.getCurrentTime() + seconds));
+        System.out.printf("Seeked to %.1f s%n", scheduler.getCurrentTime());
+        rebaseClock();
+    }
+
+    private Map<String, Integer> countEntities() {
+        Map<String, Integer> counts = new TreeMap<>();
+        PopulationStats stats = world.getStats();
+        for (EntityKind kind : EntityKind.values()) {
+            if (stats.count(kind) > 0) {
+                counts.put(kind.name(), stats.count(kind));
+            }
+        }
+        counts.put("wood carried", (int) stats.getResourceLoad());
+        return counts;
+    }
+
+    /*
+       Runs the given task on whichever thread owns the world: the simulation
+       thread when there is one, otherwise right here on the animation thread.
+    */
+    private void runOnSimulation(Runnable task) {
+        if (simulationThread == null) {
+            task.run();
+        } else {
+            simulationThread.submit(task);
+        }
     }
 
     public void update(double frameTime){
-        scheduler.updateOnTime(frameTime);
+        simulation.advance(frameTime);
     }
 
     // Just for debugging and for P5
     // Be sure to refactor this method as appropriate
     public void mousePressed() {
-        Point pressed = mouseToPoint();
+        int x = mouseX;
+        int y = mouseY;
+        runOnSimulation(() -> click(x, y));
+    }
+
+    private void click(int x, int y) {
+        Point pressed = mouseToPoint(x, y);
         System.out.println("CLICK! " + pressed.x + ", " + pressed.y);
 
         Optional<Entity> entityOptional = world.getOccupant(pressed);
         if (entityOptional.isPresent()) {
             Entity entity = entityOptional.get();
-            System.out.println(entity.getId() + ": " + entity.getClass() + " : " + entity.getHealth());
+            System.out.println(entity.getId() + ": " + entity.getKind() + " : " + entity.getHealth());
         }
 
     }
 
-    public void scheduleActions(WorldModel world, EventScheduler scheduler, ImageStore imageStore) {
-        for (EntityAb entity : world.getEntities()) {
-            entity.scheduleActions(scheduler, world, imageStore);
-        }
-    }
-
-    private Point mouseToPoint() {
-        return view.getViewport().viewportToWorld(mouseX / TILE_WIDTH, mouseY / TILE_HEIGHT);
+    private Point mouseToPoint(int x, int y) {
+        return view.getViewport().viewportToWorld(x / TILE_WIDTH, y / TILE_HEIGHT);
     }
 
     public void keyPressed() {
@@ -99,12 +219,31 @@ public final class VirtualWorld extends PApplet {
                 case LEFT -> dx -= 1;
                 case RIGHT -> dx += 1;
             }
-            view.shiftView(dx, dy);
+            int colDelta = dx;
+            int rowDelta = dy;
+            runOnSimulation(() -> view.shiftView(colDelta, rowDelta));
+        } else {
+            switch (key) {
+                case HUD_KEY -> hud.toggle();
+                case RECORD_KEY -> toggleRecording();
+                case SEEK_BACK_KEY -> runOnSimulation(() -> seek(-SEEK_SECONDS));
+                case SEEK_FORWARD_KEY -> runOnSimulation(() -> seek(SEEK_SECONDS));
+            }
         }
     }
 
-    public static Background createDefaultBackground(ImageStore imageStore) {
-        return new Background(DEFAULT_IMAGE_NAME, imageStore.getImageList(DEFAULT_IMAGE_NAME));
+    private void toggleRecording() {
+        if (frameStats.isRecording()) {
+            frameStats.stopRecording();
+        } else {
+            Path file = Path.of(String.format("frames-%d.csv", System.currentTimeMillis()));
+            try {
+                frameStats.startRecording(file);
+                System.out.println("Recording frame times to " + file);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
     }
 
     public static PImage createImageColored(int width, int height, int color) {
@@ -115,50 +254,84 @@ public final class VirtualWorld extends PApplet {
         return img;
     }
 
-    public void loadImages(String filename) {
-        this.imageStore = new ImageStore(createImageColored(TILE_WIDTH, TILE_HEIGHT, DEFAULT_IMAGE_COLOR));
-        try {
-            Scanner in = new Scanner(new File(filename));
-            Functions.loadImages(in, imageStore,this);
-        } catch (FileNotFoundException e) {
-            System.err.println(e.getMessage());
-        }
+    /**
+     * Loads the default image list. Nothing is decoded, so this needs no
+     * window; it is here for the tests and benchmarks.
+     */
+    public static ImageStore loadImageStore() {
+        return Headless.loadImageStore();
     }
 
-    public void loadWorld(String file, ImageStore imageStore) {
-        this.world = new WorldModel();
-        try {
-            Scanner in = new Scanner(new File(file));
-            world.load(in, imageStore, createDefaultBackground(imageStore));
-        } catch (FileNotFoundException e) {
-            Scanner in = new Scanner(file);
-            world.load(in, imageStore, createDefaultBackground(imageStore));
+    /*
+       Decodes the sprites of the image store through the sprite cache. A
+       positive memory budget decodes them lazily instead.
+    */
+    public static SpriteImages loadSprites(ImageStore imageStore, PApplet screen, long imageBudgetBytes) {
+        SpriteCache cache = new SpriteCache(Path.of(SPRITE_CACHE_DIR));
+        long start = System.nanoTime();
+        SpriteImages sprites = new SpriteImages(imageStore, createImageColored(TILE_WIDTH, TILE_HEIGHT, DEFAULT_IMAGE_COLOR),
+                (fileName, maskColor) -> cache.load(screen, fileName, maskColor), imageBudgetBytes);
+        if (!sprites.isLazy()) {
+            cache.prune();
+            System.out.printf("Loaded images in %.1f ms (%d cached, %d decoded)%n",
+                    (System.nanoTime() - start) / 1e6, cache.getHits(), cache.getMisses());
         }
+        return sprites;
     }
 
     public void parseCommandLine(String[] args) {
         for (String arg : args) {
+            if (arg.startsWith(IMAGE_BUDGET_FLAG)) {
+                imageBudgetBytes = Long.parseLong(arg.substring(IMAGE_BUDGET_FLAG.length())) * BYTES_PER_MB;
+                continue;
+            }
+            if (arg.startsWith(SEED_FLAG)) {
+                seed = Long.parseLong(arg.substring(SEED_FLAG.length()));
+                continue;
+            }
+            if (arg.startsWith(FAST_FORWARD_FLAG)) {
+                fastForwardSeconds = Double.parseDouble(arg.substring(FAST_FORWARD_FLAG.length()));
+                continue;
+            }
+            if (arg.startsWith(FAST_FORWARD_EVENTS_FLAG)) {
+                fastForwardEvents = Long.parseLong(arg.substring(FAST_FORWARD_EVENTS_FLAG.length()));
+                continue;
+            }
             switch (arg) {
                 case FAST_FLAG -> timeScale = Math.min(FAST_SCALE, timeScale);
                 case FASTER_FLAG -> timeScale = Math.min(FASTER_SCALE, timeScale);
                 case FASTEST_FLAG -> timeScale = Math.min(FASTEST_SCALE, timeScale);
+                case THREADED_FLAG -> threaded = true;
                 default -> loadFile = arg;
             }
         }
     }
 
+    /*
+       With -norender nothing is drawn and Processing is never started; see
+       Headless, which can also be run directly without it on the class path.
+    */
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains(NO_RENDER_FLAG)) {
+            Headless.main(args);
+            return;
+        }
         VirtualWorld.ARGS = args;
         PApplet.main(VirtualWorld.class);
     }
 
     public static List<String> headlessMain(String[] args, double lifetime){
-        VirtualWorld.ARGS = args;
-
-        VirtualWorld virtualWorld = new VirtualWorld();
-        virtualWorld.setup();
-        virtualWorld.update(lifetime);
+        return Headless.run(args, lifetime);
+    }
 
-        return virtualWorld.world.log();
+    /**
+     * Loads a world as headlessMain does and writes PNG frames of the whole
+     * world between two simulated times. Returns the number of frames.
+     */
+    public static int headlessRender(String[] args, double startTime, double endTime, double fps, Path outDir) throws IOException {
+        ImageStore imageStore = Headless.loadImageStore();
+        Simulation simulation = new Simulation(imageStore, Headless.worldArgument(args), System.nanoTime());
+        SpriteImages sprites = loadSprites(imageStore, new PApplet(), 0);
+        return FrameRenderer.recordFrames(simulation.getWorld(), sprites, simulation.getScheduler(), startTime, endTime, fps, outDir, TILE_WIDTH, TILE_HEIGHT);
     }
 }
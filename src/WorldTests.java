@@ -1,7 +1,25 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 
+import processing.core.PImage;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -204,4 +222,370 @@ public class WorldTests {
 
         assertTrue(entities.stream().anyMatch("mydude 4 2 0"::equals));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSeededRunsRepeat() {
+        String sav = makeSave(3, 3, "sapling mysapling 0 0 0", "sapling othersapling 2 2 0", "fairy myfairy 2 0 0.900 0.100", "dude  1 1 0.700 0.100 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+
+        Simulation first = new Simulation(imageStore, sav, 42);
+        Simulation second = new Simulation(imageStore, sav, 42);
+        first.advance(30);
+        second.advance(30);
+
+        assertEquals(first.log(), second.log());
+    }
+
+    @Test
+    public void testWorldFileMustExist() throws IOException {
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Path file = Files.createTempFile("world", ".sav");
+        try {
+            Files.writeString(file, makeSave(1, 2, "stump mystump 1 0"));
+            assertEquals(List.of("mystump 1 0 0"), new Simulation(imageStore, file, 1).log());
+            assertEquals(List.of("mystump 1 0 0"), VirtualWorld.headlessMain(new String[]{file.toString()}, 1));
+        } finally {
+            Files.delete(file);
+        }
+
+        assertThrows(NoSuchFileException.class, () -> new Simulation(imageStore, file, 1));
+        assertThrows(UncheckedIOException.class, () -> VirtualWorld.headlessMain(new String[]{file.toString()}, 1));
+    }
+
+    @Test
+    public void testLazyAtlasFollowsResidentImages() {
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        SpriteImages sprites = new SpriteImages(imageStore, new PImage(16, 16), (fileName, maskColor) -> new PImage(16, 16), 16 * 16 * 4);
+        PImage tree = sprites.get(imageStore.getImageList(Functions.TREE_KEY).get(0));
+        assertTrue(sprites.getAtlas().contains(tree));
+
+        PImage stump = sprites.get(imageStore.getImageList(Functions.STUMP_KEY).get(0));
+        TextureAtlas atlas = sprites.getAtlas();
+        assertTrue(atlas.contains(stump));
+        assertFalse(atlas.contains(tree));
+        assertSame(atlas, sprites.getAtlas());
+    }
+
+    @Test
+    public void testSeekReplaysFromCheckpoint() {
+        String sav = makeSave(3, 3, "sapling mysapling 0 0 0", "sapling othersapling 2 2 0", "fairy myfairy 2 0 0.900 0.100", "dude  1 1 0.700 0.100 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+
+        Simulation plain = new Simulation(imageStore, sav, 7);
+        Simulation seeking = new Simulation(imageStore, sav, 7);
+        seeking.enableCheckpoints(1, 20);
+        plain.advance(25);
+        seeking.advance(40);
+        seeking.seek(25);
+
+        assertEquals(plain.log(), seeking.log());
+        plain.advance(15);
+        seeking.advance(15);
+        assertEquals(plain.log(), seeking.log());
+    }
+
+    @Test
+    public void testCheckpointKeepsFarCoordinates() {
+        String sav = makeSave(2, 40000, "tree mytree 39999 1 0.400 1.200 3", "obstacle myobstacle 32768 0 0.900");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Simulation simulation = new Simulation(imageStore, sav, 1);
+        byte[] state = Checkpoint.encode(simulation.getWorld(), simulation.getScheduler());
+
+        Simulation restored = new Simulation(imageStore, makeSave(2, 40000), 1);
+        Checkpoint.restore(state, restored.getWorld(), restored.getScheduler(), imageStore);
+        assertEquals(simulation.log(), restored.log());
+    }
+
+    @Test
+    public void testCheckpointDeltaSurvivesRemoval() {
+        List<String> entities = new ArrayList<>();
+        for (int col = 0; col < 200; col++) {
+            entities.add("obstacle  " + col + " 0 1000.0");
+        }
+        String sav = makeSave(2, 200, entities.toArray(new String[0]));
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Simulation simulation = new Simulation(imageStore, sav, 1);
+        simulation.enableCheckpoints(1, 4);
+        long keyframe = simulation.getCheckpoints().getStoredBytes();
+
+        WorldModel world = simulation.getWorld();
+        world.removeEntity(simulation.getScheduler(), world.getOccupancyCell(new Point(0, 0)));
+        simulation.advance(1);
+        long delta = simulation.getCheckpoints().getStoredBytes() - keyframe;
+        assertTrue(delta < keyframe / 20, "delta of " + delta + " bytes against " + keyframe);
+
+        Simulation replay = new Simulation(imageStore, sav, 1);
+        replay.getWorld().removeEntity(replay.getScheduler(), replay.getWorld().getOccupancyCell(new Point(0, 0)));
+        replay.advance(1);
+        simulation.advance(1);
+        simulation.seek(1);
+        assertEquals(replay.log(), simulation.log());
+        assertEquals(199, simulation.getWorld().getEntities().size());
+    }
+
+    @Test
+    public void testShardedRuns() throws IOException, InterruptedException {
+        String sav = makeSave(6, 8, "sapling mysapling 0 0 0", "tree  7 5 0.400 1.200 3", "stump  4 2", "house  0 5",
+                "fairy myfairy 6 0 0.900 0.100", "dude  1 1 0.700 0.100 2", "dude  6 4 0.700 0.150 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+
+        Simulation single = new Simulation(imageStore, sav, 5);
+        single.advance(30);
+        ShardedSimulation.Result whole = new ShardedSimulation(imageStore, sav, 5, 1, 1).run(30, ShardedSimulation.Mode.THREADS);
+        assertEquals(single.log(), whole.getLog());
+
+        ShardedSimulation.Result threads = new ShardedSimulation(imageStore, sav, 5, 2, 2).run(30, ShardedSimulation.Mode.THREADS);
+        ShardedSimulation.Result processes = new ShardedSimulation(imageStore, sav, 5, 2, 2).run(30, ShardedSimulation.Mode.PROCESSES);
+        assertEquals(threads.getLog(), processes.getLog());
+        assertEquals(threads.getLog(), new ShardedSimulation(imageStore, sav, 5, 2, 2).run(30, ShardedSimulation.Mode.THREADS).getLog());
+        assertTrue(threads.getWindows() > 1);
+        for (ShardedSimulation.Result result : List.of(threads, processes, new ShardedSimulation(imageStore, sav, 5, 1, 2).run(30, ShardedSimulation.Mode.THREADS))) {
+            assertEquals(1, result.getKindCount(EntityKind.FAIRY));
+            assertEquals(2, result.getKindCount(EntityKind.DUDE_FULL) + result.getKindCount(EntityKind.DUDE_NOT_FULL));
+        }
+    }
+
+    @Test
+    public void testShardHoldsRegionAndHalo() {
+        List<String> entities = new ArrayList<>();
+        for (int col = 0; col < 40; col++) {
+            entities.add("obstacle  " + col + " 1 1000.0");
+        }
+        String sav = makeSave(2, 40, entities.toArray(new String[0]));
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Shard shard = new Shard(1, new ShardPlan(2, 40, 1, 2), imageStore, sav, 1);
+        WorldModel world = shard.getWorld();
+
+        assertFalse(world.holds(new Point(20 - Shard.HALO - 1, 1)));
+        assertTrue(world.holds(new Point(20 - Shard.HALO, 1)));
+        assertEquals(20, world.getEntities().size());
+        assertEquals(List.of(0), shard.getNeighbours());
+        Simulation single = new Simulation(imageStore, sav, 1);
+        assertEquals(single.getWorld().getOccupancyCell(new Point(25, 1)).getSerial(), world.getOccupancyCell(new Point(25, 1)).getSerial());
+    }
+
+    @Test
+    public void testIdleFairyWaitsForStump() {
+        String sav = makeSave(1, 2, "fairy myfairy 1 0 100.0 0.500", "sapling mysapling 0 0 -5");
+        Simulation simulation = new Simulation(VirtualWorld.loadImageStore(), sav, 1);
+        Entity fairy = simulation.getWorld().getOccupancyCell(new Point(1, 0));
+
+        simulation.advance(0.75);
+        assertTrue(simulation.getWorld().isParked(fairy));
+        assertEquals(1, simulation.getScheduler().getPendingEvents(fairy).size());
+
+        simulation.advance(1);
+        assertFalse(simulation.getWorld().isParked(fairy));
+        assertTrue(simulation.log().contains("sapling_stump_mysapling 0 0 0"));
+    }
+
+    @Test
+    public void testSpectatorSeesWorld() throws IOException, InterruptedException {
+        String sav = makeSave(4, 5, "sapling mysapling 0 0 0", "tree  4 3 0.400 1.200 3", "stump  2 2", "house  0 3",
+                "fairy myfairy 4 0 0.300 0.200", "dude  1 1 0.200 0.300 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Simulation simulation = new Simulation(imageStore, sav, 3);
+        WorldModel world = simulation.getWorld();
+
+        try (SpectatorServer server = new SpectatorServer(world, 0);
+             SpectatorClient client = new SpectatorClient(imageStore, "localhost", server.getPort(), 0, 0, 4, 5)) {
+            for (int tries = 0; client.getFrame() == 0 && tries < 200; tries++) {
+                server.publishFrame(simulation.getCurrentTime());
+                client.awaitFrame(server.getFramesPublished(), 10);
+            }
+            for (int step = 0; step < 40; step++) {
+                simulation.advance(0.1);
+                server.publishFrame(simulation.getCurrentTime());
+                assertTrue(client.awaitFrame(server.getFramesPublished(), 2000));
+                for (int row = 0; row < 4; row++) {
+                    for (int col = 0; col < 5; col++) {
+                        Entity entity = world.getOccupancyCell(new Point(col, row));
+                        assertEquals(entity == null ? null : entity.getCurrentImage(), client.getOccupant(col, row));
+                    }
+                }
+            }
+
+            client.requestRegion(3, 2, 2, 2);
+            for (int tries = 0; client.getCol() != 3 && tries < 200; tries++) {
+                server.publishFrame(simulation.getCurrentTime());
+                client.awaitFrame(server.getFramesPublished(), 10);
+            }
+            Entity tree = world.getOccupancyCell(new Point(4, 3));
+            assertEquals(tree == null ? null : tree.getCurrentImage(), client.getOccupant(1, 1));
+            assertEquals(world.getBackgroundCell(new Point(3, 2)).getCurrentImage(), client.getBackground(0, 0));
+        }
+    }
+
+    @Test
+    public void testEventLogReplaysAndVerifies() throws IOException {
+        String sav = makeSave(3, 3, "sapling mysapling 0 0 0", "sapling othersapling 2 2 0", "fairy myfairy 2 0 0.900 0.100", "dude  1 1 0.700 0.100 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+
+        Simulation recorded = new Simulation(imageStore, sav, 9);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        EventRecorder recorder = EventRecorder.recorder(recorded, log);
+        recorded.advance(15);
+        List<String> halfway = recorded.log();
+        recorded.advance(15);
+        recorder.close();
+
+        EventReplayer replayer = new EventReplayer(new ByteArrayInputStream(log.toByteArray()));
+        replayer.advanceTo(15);
+        assertEquals(halfway, replayer.log());
+        assertFalse(replayer.advanceTo(30));
+        assertEquals(recorded.log(), replayer.log());
+        assertEquals(recorder.getEventsRecorded(), replayer.getEventsReplayed());
+
+        Simulation same = new Simulation(imageStore, sav, 9);
+        EventRecorder verifier = EventRecorder.verifier(same, new DataInputStream(new ByteArrayInputStream(log.toByteArray())));
+        same.advance(30);
+        assertNull(verifier.getDivergence());
+
+        Simulation other = new Simulation(imageStore, sav, 10);
+        EventRecorder otherVerifier = EventRecorder.verifier(other, new DataInputStream(new ByteArrayInputStream(log.toByteArray())));
+        other.advance(30);
+        assertNotNull(otherVerifier.getDivergence());
+    }
+
+    @Test
+    public void testPopulationStatsFollowTheWorld() throws IOException {
+        WorldGenerator generator = new WorldGenerator(40, 60, 4);
+        generator.setCount("dude", 12);
+        generator.setCount("fairy", 6);
+        generator.setCount("tree", 60);
+        generator.setCount("sapling", 40);
+        generator.setCount("stump", 30);
+        generator.setCount("house", 3);
+        StringWriter save = new StringWriter();
+        generator.write(save);
+        Simulation simulation = new Simulation(VirtualWorld.loadImageStore(), save.toString(), 4);
+        simulation.enableHistory(1, 8);
+        simulation.advance(20);
+
+        PopulationStats stats = simulation.getWorld().getStats();
+        Map<EntityKind, Integer> counts = new HashMap<>();
+        long load = 0;
+        for (EntityAb entity : simulation.getWorld().getEntities()) {
+            counts.merge(entity.getKind(), 1, Integer::sum);
+            if (entity instanceof Dude dude) {
+                load += dude.getResourceCount();
+            }
+        }
+        for (EntityKind kind : EntityKind.values()) {
+            int inChunks = 0;
+            for (int row = 0; row < stats.getChunkRows(); row++) {
+                for (int col = 0; col < stats.getChunkCols(); col++) {
+                    inChunks += stats.count(row, col, kind);
+                }
+            }
+            assertEquals(counts.getOrDefault(kind, 0), stats.count(kind));
+            assertEquals(stats.count(kind), inChunks);
+        }
+        assertEquals(load, stats.getResourceLoad());
+
+        PopulationHistory history = simulation.getHistory();
+        assertEquals(8, history.size());
+        assertEquals(7.0, history.getTime(7) - history.getTime(0));
+        assertTrue(history.getTime(7) <= 20);
+        StringWriter csv = new StringWriter();
+        history.writeCsv(csv);
+        assertEquals(9, csv.toString().split("\n").length);
+    }
+
+    @Test
+    public void testWorldEventsReachSubscribers() throws InterruptedException {
+        String sav = makeSave(3, 3, "sapling mysapling 0 0 0", "stump mystump 2 2", "fairy myfairy 2 0 0.900 0.100", "dude  1 1 0.700 0.100 2");
+        Simulation simulation = new Simulation(VirtualWorld.loadImageStore(), sav, 2);
+        List<WorldEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        Flow.Subscriber<WorldEvent> reader = new Flow.Subscriber<>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            public void onNext(WorldEvent event) {
+                events.add(event);
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+                completed.countDown();
+            }
+        };
+        Flow.Subscriber<WorldEvent> stalled = new Flow.Subscriber<>() {
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            public void onNext(WorldEvent event) {
+            }
+
+            public void onError(Throwable throwable) {
+            }
+
+            public void onComplete() {
+            }
+        };
+
+        WorldEventPublisher lossless = new WorldEventPublisher(simulation, 4, WorldEventPublisher.Policy.BLOCK);
+        WorldEventPublisher lossy = new WorldEventPublisher(simulation, 4, WorldEventPublisher.Policy.DROP);
+        lossless.subscribe(reader);
+        lossy.subscribe(stalled);
+        simulation.advance(30);
+        lossless.close();
+        lossy.close();
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+
+        assertTrue(events.stream().anyMatch(e -> e.getType() == WorldEvent.Type.MOVED));
+        assertTrue(events.stream().anyMatch(e -> e.getType() == WorldEvent.Type.TRANSFORMED
+                && e.getFromKind() == EntityKind.SAPLING && e.getKind() == EntityKind.TREE));
+        assertEquals(0, lossless.getDropped(reader));
+        assertEquals(events.size(), lossy.getDropped(stalled) + 4);
+    }
+
+    @Test
+    public void testGeneratedWorldHasExactCounts() throws IOException {
+        WorldGenerator generator = new WorldGenerator(40, 60, 11);
+        generator.setCount("dude", 7);
+        generator.setCount("tree", 50);
+        generator.setCount("house", 2);
+        generator.setObstacleClusters(10, 3);
+        StringWriter out = new StringWriter();
+        generator.write(out);
+
+        Simulation simulation = new Simulation(VirtualWorld.loadImageStore(), out.toString(), 1);
+        Map<EntityKind, Integer> counts = new HashMap<>();
+        for (EntityAb entity : simulation.getWorld().getEntities()) {
+            counts.merge(entity.getKind(), 1, Integer::sum);
+        }
+        assertEquals(7, counts.get(EntityKind.DUDE_NOT_FULL));
+        assertEquals(50, counts.get(EntityKind.TREE));
+        assertEquals(2, counts.get(EntityKind.HOUSE));
+        assertEquals(null, counts.get(EntityKind.FAIRY));
+        assertTrue(counts.get(EntityKind.OBSTACLE) > 0);
+    }
+
+    @Test
+    public void testDormantPlantsMatchEveryEvent() {
+        String sav = makeSave(5, 6, "sapling mysapling 0 0 0", "sapling othersapling 5 4 -2", "tree mytree 2 2 0.400 1.200 3",
+                "tree othertree 4 1 0.400 1.000 1", "stump mystump 3 4", "house  0 4", "fairy myfairy 5 0 0.500 0.200",
+                "dude  1 1 0.400 0.100 2");
+        ImageStore imageStore = VirtualWorld.loadImageStore();
+        Simulation every = new Simulation(imageStore, sav, 3);
+        Simulation dormant = new Simulation(imageStore, sav, 3);
+        dormant.enableDormancy();
+
+        for (int step = 0; step < 60; step++) {
+            every.advance(0.5);
+            dormant.advance(0.5);
+            assertEquals(every.log(), dormant.log());
+            List<Integer> everyHealth = new ArrayList<>();
+            List<Integer> dormantHealth = new ArrayList<>();
+            every.getWorld().getEntities().forEach(entity -> everyHealth.add(entity.getHealth()));
+            dormant.getWorld().getEntities().forEach(entity -> dormantHealth.add(entity.getHealth()));
+            assertEquals(everyHealth, dormantHealth);
+        }
+        assertTrue(dormant.getScheduler().getEventsProcessed() < every.getScheduler().getEventsProcessed());
+    }
+}
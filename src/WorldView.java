@@ -1,50 +1,169 @@
+import java.util.List;
+
 import processing.core.PApplet;
+import processing.core.PGraphics;
 import processing.core.PImage;
 
-import java.util.Optional;
-
 public final class WorldView {
+    private static final int PREFETCH_MARGIN = 4;
+
     private PApplet screen;
     private WorldModel world;
+    private SpriteImages sprites;
     private int tileWidth;
     private int tileHeight;
     private Viewport viewport;
+    private final Viewport drawnViewport;
+    private final ViewSnapshot localSnapshot;
+    private PGraphics frame;
+    private final boolean[] dirtyTiles;
+    private final BackgroundLayer backgroundLayer;
+    private final PImage[] drawnOccupants;
+    private boolean fullRedraw;
+    private int tilesDrawn;
 
-    public WorldView(int numRows, int numCols, PApplet screen, WorldModel world, int tileWidth, int tileHeight) {
+    public WorldView(int numRows, int numCols, PApplet screen, WorldModel world, SpriteImages sprites, int tileWidth, int tileHeight) {
         this.screen = screen;
         this.world = world;
+        this.sprites = sprites;
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
         this.viewport = new Viewport(numRows, numCols);
+        this.drawnViewport = new Viewport(numRows, numCols);
+        this.localSnapshot = createSnapshot();
+        this.dirtyTiles = new boolean[numRows * numCols];
+        this.backgroundLayer = new BackgroundLayer(screen, world, sprites, tileWidth, tileHeight);
+        this.drawnOccupants = new PImage[numRows * numCols];
+        this.fullRedraw = true;
     }
     public Viewport getViewport(){
         return this.viewport;
     }
 
 
+    public int getTilesDrawn() {
+        return this.tilesDrawn;
+    }
+
+    public ViewSnapshot createSnapshot() {
+        return new ViewSnapshot(this.viewport.getNumRows(), this.viewport.getNumCols());
+    }
+
+    /**
+     * Captures and draws the current state of the world. Only for use when
+     * the simulation runs on the drawing thread.
+     */
     public void drawViewport() {
-        drawBackground();
-        drawEntities();
+        captureSnapshot(this.localSnapshot);
+        drawSnapshot(this.localSnapshot);
     }
 
-    public void drawEntities() {
-        for (Entity entity : this.world.getEntities()) {
-            Point pos = entity.getPosition();
+    /*
+       Records the viewport position and the sprites and frame of each
+       visible occupant. Must run on the thread that updates the world.
+       Nothing is decoded here; drawSnapshot resolves the images.
+    */
+    public void captureSnapshot(ViewSnapshot snapshot) {
+        snapshot.reset(this.viewport);
+        if (this.sprites.isLazy()) {
+            collectNearby(snapshot);
+        }
+        collectOccupants(snapshot);
+    }
+
+    /*
+       Only tiles whose background or occupant frame changed since the last
+       frame are redrawn into the offscreen frame buffer, which is then copied
+       to the screen in one blit. When the viewport has moved, the cached
+       background chunks are blitted and every occupant is drawn again.
+    */
+    public void drawSnapshot(ViewSnapshot snapshot) {
+        if (this.frame == null) {
+            this.frame = this.screen.createGraphics(this.drawnViewport.getNumCols() * this.tileWidth, this.drawnViewport.getNumRows() * this.tileHeight);
+            this.fullRedraw = true;
+        }
+        if (snapshot.getCol() != this.drawnViewport.getCol() || snapshot.getRow() != this.drawnViewport.getRow()) {
+            this.drawnViewport.shift(snapshot.getCol(), snapshot.getRow());
+            this.fullRedraw = true;
+        }
+        markChangedBackgrounds();
+        for (Sprite sprite : snapshot.getNearbySprites()) {
+            this.sprites.get(sprite);
+        }
 
-            if (this.viewport.contains(pos)) {
-                Point viewPoint = this.viewport.worldToViewport(pos.x, pos.y);
-                this.screen.image(entity.getCurrentImage(), viewPoint.x * this.tileWidth, viewPoint.y * this.tileHeight);
+        TextureAtlas atlas = this.sprites.getAtlas();
+        this.tilesDrawn = 0;
+        this.frame.beginDraw();
+        this.frame.noStroke();
+        if (this.fullRedraw) {
+            this.frame.background(0);
+            this.backgroundLayer.drawViewport(this.frame, this.drawnViewport);
+        }
+        for (int row = 0; row < this.drawnViewport.getNumRows(); row++) {
+            for (int col = 0; col < this.drawnViewport.getNumCols(); col++) {
+                int cell = row * this.drawnViewport.getNumCols() + col;
+                List<Sprite> images = snapshot.getOccupantImages(cell);
+                PImage occupant = images == null ? null : this.sprites.get(images.get(snapshot.getOccupantFrame(cell) % images.size()));
+                if (this.fullRedraw || this.dirtyTiles[cell] || occupant != this.drawnOccupants[cell]) {
+                    if (!this.fullRedraw) {
+                        this.backgroundLayer.drawTile(this.frame, this.drawnViewport, col, row);
+                    }
+                    if (occupant != null) {
+                        atlas.draw(this.frame, occupant, col * this.tileWidth, row * this.tileHeight);
+                    }
+                    this.drawnOccupants[cell] = occupant;
+                    this.dirtyTiles[cell] = false;
+                    this.tilesDrawn++;
+                }
+            }
+        }
+        this.frame.endDraw();
+        this.fullRedraw = false;
+
+        this.screen.image(this.frame, 0, 0);
+    }
+
+    private void markChangedBackgrounds() {
+        Point changed;
+        while ((changed = this.backgroundLayer.pollChangedCell()) != null) {
+            if (this.drawnViewport.contains(changed)) {
+                Point viewPoint = this.drawnViewport.worldToViewport(changed.x, changed.y);
+                this.dirtyTiles[viewPoint.y * this.drawnViewport.getNumCols() + viewPoint.x] = true;
             }
         }
     }
 
-    public void drawBackground() {
-        for (int row = 0; row < this.viewport.getNumRows(); row++) {
-            for (int col = 0; col < this.viewport.getNumCols(); col++) {
+    /*
+       Notes the sprites of everything within PREFETCH_MARGIN cells of the
+       viewport, which the renderer decodes so that scrolling or approaching
+       entities rarely stall a frame.
+    */
+    private void collectNearby(ViewSnapshot snapshot) {
+        for (int row = -PREFETCH_MARGIN; row < this.viewport.getNumRows() + PREFETCH_MARGIN; row++) {
+            for (int col = -PREFETCH_MARGIN; col < this.viewport.getNumCols() + PREFETCH_MARGIN; col++) {
                 Point worldPoint = this.viewport.viewportToWorld(col, row);
-                Optional<PImage> image = this.world.getBackgroundImage(worldPoint);
-                if (image.isPresent()) {
-                    this.screen.image(image.get(), col * this.tileWidth, row * this.tileHeight);
+                this.world.getBackgroundImage(worldPoint).ifPresent(snapshot::addNearby);
+                this.world.getOccupant(worldPoint).ifPresent(entity -> snapshot.addNearby(entity.getImages()));
+            }
+        }
+    }
+
+    /*
+       Looks up the occupant of each visible cell rather than scanning every
+       entity in the world, so the cost depends only on the viewport size.
+    */
+    private void collectOccupants(ViewSnapshot snapshot) {
+        int firstRow = Math.max(0, this.viewport.getRow());
+        int firstCol = Math.max(0, this.viewport.getCol());
+        int lastRow = Math.min(this.world.getNumRows(), this.viewport.getRow() + this.viewport.getNumRows());
+        int lastCol = Math.min(this.world.getNumCols(), this.viewport.getCol() + this.viewport.getNumCols());
+
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                Entity entity = this.world.getOccupancyCell(new Point(col, row));
+                if (entity != null) {
+                    Point viewPoint = this.viewport.worldToViewport(col, row);
+                    snapshot.setOccupant(viewPoint.y * this.viewport.getNumCols() + viewPoint.x, entity.getImages(), entity.getImageIndex());
                 }
             }
         }